@@ -0,0 +1,82 @@
+package com.amigoscode.testing;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//request bodies as the controllers read them, with a mapper configured like the one spring boot provides
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestJsonBenchmark {
+
+    private ObjectReader paymentRequestReader;
+    private ObjectWriter paymentRequestWriter;
+    private ObjectReader customerRegistrationRequestReader;
+    private ObjectWriter customerRegistrationRequestWriter;
+
+    private PaymentRequest paymentRequest;
+    private String paymentRequestJson;
+    private CustomerRegistrationRequest customerRegistrationRequest;
+    private String customerRegistrationRequestJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        paymentRequestReader = objectMapper.readerFor(PaymentRequest.class);
+        paymentRequestWriter = objectMapper.writerFor(PaymentRequest.class);
+        customerRegistrationRequestReader = objectMapper.readerFor(CustomerRegistrationRequest.class);
+        customerRegistrationRequestWriter = objectMapper.writerFor(CustomerRegistrationRequest.class);
+
+        paymentRequest = new PaymentRequest(new Payment(
+                null, UUID.randomUUID(), new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation"));
+        paymentRequestJson = paymentRequestWriter.writeValueAsString(paymentRequest);
+        customerRegistrationRequest = new CustomerRegistrationRequest(
+                new Customer(UUID.randomUUID(), "Max", "+447000000000"));
+        customerRegistrationRequestJson = customerRegistrationRequestWriter.writeValueAsString(customerRegistrationRequest);
+    }
+
+    @Benchmark
+    public PaymentRequest readPaymentRequest() throws JsonProcessingException {
+        return paymentRequestReader.readValue(paymentRequestJson);
+    }
+
+    @Benchmark
+    public String writePaymentRequest() throws JsonProcessingException {
+        return paymentRequestWriter.writeValueAsString(paymentRequest);
+    }
+
+    @Benchmark
+    public CustomerRegistrationRequest readCustomerRegistrationRequest() throws JsonProcessingException {
+        return customerRegistrationRequestReader.readValue(customerRegistrationRequestJson);
+    }
+
+    @Benchmark
+    public String writeCustomerRegistrationRequest() throws JsonProcessingException {
+        return customerRegistrationRequestWriter.writeValueAsString(customerRegistrationRequest);
+    }
+}
@@ -0,0 +1,100 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.TestingApplication;
+import com.amigoscode.testing.util.TimeOrderedUuidGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//customer inserts with random and with time ordered ids. after every iteration the customer table's size,
+//primary key index included, is printed per customer so page splits from random ids show up as bytes too.
+//H2 only reports sizes for databases on disk, so this one runs against a file under target
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerIdBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"random", "time-ordered"})
+    public String ids;
+
+    private ConfigurableApplicationContext context;
+    private CustomerRepository customerRepository;
+    private JdbcTemplate jdbcTemplate;
+    private Supplier<UUID> idGenerator;
+    private final AtomicLong nextPhoneNumber = new AtomicLong(7_000_000_000L);
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        Path database = Paths.get("target", "jmh-customer-ids");
+        FileSystemUtils.deleteRecursively(database);
+        context = new SpringApplicationBuilder(TestingApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "stripe.enabled=false",
+                        "spring.datasource.url=jdbc:h2:file:" + database.toAbsolutePath().resolve(ids),
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run();
+        customerRepository = context.getBean(CustomerRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        TimeOrderedUuidGenerator timeOrderedUuidGenerator = context.getBean(TimeOrderedUuidGenerator.class);
+        idGenerator = ids.equals("random") ? UUID::randomUUID : timeOrderedUuidGenerator::next;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Customer> insertCustomers() {
+        List<Customer> customers = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            customers.add(new Customer(idGenerator.get(), "Max", "+44" + nextPhoneNumber.getAndIncrement()));
+        }
+        customerRepository.insertAll(customers);
+        return customers;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printTableSize() {
+        //pages still in memory are not counted until they are written
+        jdbcTemplate.execute("checkpoint");
+        Long customers = jdbcTemplate.queryForObject("select count(*) from customer", Long.class);
+        Long bytes = jdbcTemplate.queryForObject("select disk_space_used('CUSTOMER')", Long.class);
+        System.out.printf("%n[%s ids] %d customers, %d bytes, %.1f bytes per customer%n",
+                ids, customers, bytes, (double) bytes / customers);
+    }
+}
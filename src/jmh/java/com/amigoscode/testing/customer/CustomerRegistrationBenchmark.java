@@ -0,0 +1,53 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.BenchmarkApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerRegistrationBenchmark {
+
+    private static final String REGISTERED_PHONE_NUMBER = "+447999999999";
+
+    private CustomerRegistrationService customerRegistrationService;
+    //every new registration needs a phone number nobody has used yet
+    private final AtomicLong nextPhoneNumber = new AtomicLong(7_000_000_000L);
+
+    @Setup
+    public void setUp(BenchmarkApplication application) {
+        customerRegistrationService = application.getBean(CustomerRegistrationService.class);
+        customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(null, "Max", REGISTERED_PHONE_NUMBER)));
+    }
+
+    @Benchmark
+    public Customer registerNewCustomer() {
+        Customer customer = new Customer(null, "Max", "+44" + nextPhoneNumber.getAndIncrement());
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+        return customer;
+    }
+
+    //a client retrying a registration that already went through
+    @Benchmark
+    public Customer registerExistingCustomer() {
+        Customer customer = new Customer(null, "Max", REGISTERED_PHONE_NUMBER);
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+        return customer;
+    }
+}
@@ -0,0 +1,47 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.BenchmarkApplication;
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.customer.CustomerRegistrationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentServiceBenchmark {
+
+    private PaymentService paymentService;
+    private UUID customerId;
+
+    @Setup
+    public void setUp(BenchmarkApplication application) {
+        paymentService = application.getBean(PaymentService.class);
+        customerId = UUID.randomUUID();
+        application.getBean(CustomerRegistrationService.class).registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(customerId, "James", "+447000000000")));
+    }
+
+    @Benchmark
+    public Payment chargeCard() {
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        paymentService.chargeCard(customerId, new PaymentRequest(payment));
+        return payment;
+    }
+}
@@ -0,0 +1,62 @@
+package com.amigoscode.testing.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhoneNumberValidatorBenchmark {
+
+    private final PhoneNumberValidator phoneNumberValidator = new PhoneNumberValidator();
+
+    //fields rather than constants so the JIT cannot fold the input away
+    private String validPhoneNumber = "+447000000000";
+    private String formattedPhoneNumber = "0044 (0) 7000-000 000";
+    private String invalidPhoneNumber = "+999123456789";
+
+    //a benchmark on the wrong side of the check measures a different path than its name says
+    @Setup
+    public void checkInputs() {
+        if (!phoneNumberValidator.test(validPhoneNumber) || !phoneNumberValidator.test(formattedPhoneNumber)) {
+            throw new IllegalStateException("Valid benchmark phone numbers do not validate");
+        }
+        if (phoneNumberValidator.test(invalidPhoneNumber)) {
+            throw new IllegalStateException(String.format("phone number: [%s] should not validate", invalidPhoneNumber));
+        }
+    }
+
+    @Benchmark
+    public boolean testValid() {
+        return phoneNumberValidator.test(validPhoneNumber);
+    }
+
+    @Benchmark
+    public boolean testFormatted() {
+        return phoneNumberValidator.test(formattedPhoneNumber);
+    }
+
+    @Benchmark
+    public boolean testInvalid() {
+        return phoneNumberValidator.test(invalidPhoneNumber);
+    }
+
+    @Benchmark
+    public Optional<String> normalize() {
+        return phoneNumberValidator.normalize(formattedPhoneNumber);
+    }
+}
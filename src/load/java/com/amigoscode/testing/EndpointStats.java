@@ -0,0 +1,83 @@
+package com.amigoscode.testing;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//latencies and failures of one endpoint under load. latency is in nanoseconds, from when the request was
+//due to when its response arrived
+class EndpointStats {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    //3 significant digits, resized as slower responses come in
+    private final Histogram latencies = new ConcurrentHistogram(3);
+    private final LongAdder failures = new LongAdder();
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void recordSuccess(long dueNanos) {
+        latencies.recordValue(System.nanoTime() - dueNanos);
+    }
+
+    //non 2xx responses and requests that got no response at all
+    void recordFailure(long dueNanos) {
+        latencies.recordValue(System.nanoTime() - dueNanos);
+        failures.increment();
+    }
+
+    long getRequests() {
+        return latencies.getTotalCount();
+    }
+
+    double getFailureRate() {
+        long requests = getRequests();
+        return requests == 0 ? 0 : (double) failures.sum() / requests;
+    }
+
+    //successful requests per second over the run
+    double getThroughput(Duration elapsed) {
+        return (getRequests() - failures.sum()) / (elapsed.toNanos() / 1e9);
+    }
+
+    Duration getLatencyAtPercentile(double percentile) {
+        return Duration.ofNanos(latencies.getValueAtPercentile(percentile));
+    }
+
+    void reset() {
+        latencies.reset();
+        failures.reset();
+    }
+
+    String summary(Duration elapsed) {
+        return String.format("%-14s requests=%-7d failures=%-5d throughput=%8.1f/s  p50=%8.2fms  p90=%8.2fms  p99=%8.2fms  p99.9=%8.2fms  max=%8.2fms",
+                name, getRequests(), failures.sum(), getThroughput(elapsed),
+                latencies.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                latencies.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                latencies.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                latencies.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                latencies.getMaxValue() / NANOS_PER_MILLI);
+    }
+
+    //the full percentile distribution in milliseconds, in the .hgrm format the HdrHistogram plotter reads
+    void writePercentiles(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(name + ".hgrm")))) {
+            latencies.outputPercentileDistribution(out, NANOS_PER_MILLI);
+        }
+    }
+}
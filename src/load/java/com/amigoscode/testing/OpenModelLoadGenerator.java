@@ -0,0 +1,45 @@
+package com.amigoscode.testing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+//open model load: flows start on a fixed schedule whatever the server is doing, and each flow gets the time
+//it was due rather than the time it actually started. a server that stalls then shows up as latency instead
+//of as the generator quietly sending less (coordinated omission)
+class OpenModelLoadGenerator {
+
+    private final double arrivalsPerSecond;
+
+    OpenModelLoadGenerator(double arrivalsPerSecond) {
+        if (arrivalsPerSecond <= 0) {
+            throw new IllegalStateException(String.format("Arrival rate must be positive, got [%s]", arrivalsPerSecond));
+        }
+        this.arrivalsPerSecond = arrivalsPerSecond;
+    }
+
+    //starts a flow per arrival for the given duration, passing the nanoTime it was due, then waits for all of
+    //them to finish. flows must not block, or arrivals fall behind schedule. returns the time from the first
+    //arrival until the last flow finished
+    Duration run(Duration duration, LongFunction<CompletableFuture<?>> flow) {
+        long arrivals = (long) (duration.toNanos() / 1e9 * arrivalsPerSecond);
+        List<CompletableFuture<?>> flows = new ArrayList<>((int) arrivals);
+        long start = System.nanoTime();
+
+        for (long i = 0; i < arrivals; i++) {
+            //from the start rather than from the previous arrival so rounding does not add up to drift
+            long due = start + (long) (i * 1e9 / arrivalsPerSecond);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            flows.add(flow.apply(due));
+        }
+
+        CompletableFuture.allOf(flows.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,148 @@
+package com.amigoscode.testing;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+//the flow PaymentsIntegrationTest makes once, registration then payment, at a constant arrival rate against the
+//embedded server with H2 and the mock card charger. fails when a threshold is missed. tuned with
+//-Dload.rate, -Dload.warmup, -Dload.duration, -Dload.registration.max-p99, -Dload.payment.max-p99,
+//-Dload.min-throughput-ratio and -Dload.max-failure-rate
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"stripe.enabled=false", "logging.level.root=warn"})
+class RegistrationAndPaymentLoadTest {
+
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "20"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("load.warmup", "PT10S"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("load.duration", "PT20S"));
+    private static final Duration REGISTRATION_MAX_P99 = Duration.parse(System.getProperty("load.registration.max-p99", "PT0.5S"));
+    private static final Duration PAYMENT_MAX_P99 = Duration.parse(System.getProperty("load.payment.max-p99", "PT0.5S"));
+    private static final double MIN_THROUGHPUT_RATIO = Double.parseDouble(System.getProperty("load.min-throughput-ratio", "0.95"));
+    private static final double MAX_FAILURE_RATE = Double.parseDouble(System.getProperty("load.max-failure-rate", "0"));
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    @LocalServerPort private int port;
+
+    @Autowired private ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final EndpointStats registrations = new EndpointStats("registration");
+    private final EndpointStats payments = new EndpointStats("payment");
+    //every registration needs a phone number nobody has used yet
+    private final AtomicLong nextPhoneNumber = new AtomicLong(7_000_000_000L);
+
+    @AfterEach
+    void tearDown() {
+        httpClient.close();
+    }
+
+    @Test
+    void itShouldKeepLatencyAndThroughputWithinThresholds() throws IOException {
+        //given a warmed up server
+        OpenModelLoadGenerator generator = new OpenModelLoadGenerator(RATE);
+        generator.run(WARMUP, this::registerAndPay);
+        registrations.reset();
+        payments.reset();
+
+        //when
+        Duration elapsed = generator.run(DURATION, this::registerAndPay);
+
+        //then
+        System.out.printf("%n%.0f arrivals/s for %s%n", RATE, DURATION);
+        for (EndpointStats stats : List.of(registrations, payments)) {
+            System.out.println(stats.summary(elapsed));
+            stats.writePercentiles(Paths.get("target", "load"));
+        }
+
+        SoftAssertions softly = new SoftAssertions();
+        assertWithinThresholds(softly, registrations, REGISTRATION_MAX_P99, elapsed);
+        assertWithinThresholds(softly, payments, PAYMENT_MAX_P99, elapsed);
+        softly.assertAll();
+    }
+
+    //the payment is due as soon as its registration succeeds, a failed registration has no payment
+    private CompletableFuture<?> registerAndPay(long dueNanos) {
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer(customerId, "Load", "+44" + nextPhoneNumber.getAndIncrement());
+        return send(HttpRequest.newBuilder(uri("/api/v1/customer-registration"))
+                        .PUT(json(new CustomerRegistrationRequest(customer))),
+                registrations, dueNanos)
+                .thenCompose(registered -> {
+                    if (!registered) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    Payment payment = new Payment(null, customerId, new BigDecimal("10.00"), Currency.GBP, "x0x0x0x0", "load");
+                    return send(HttpRequest.newBuilder(uri("/api/v1/payment"))
+                                    .POST(json(new PaymentRequest(payment))),
+                            payments, System.nanoTime());
+                });
+    }
+
+    private CompletableFuture<Boolean> send(HttpRequest.Builder request, EndpointStats stats, long dueNanos) {
+        return httpClient.sendAsync(request
+                                .header("Content-Type", "application/json")
+                                .timeout(REQUEST_TIMEOUT)
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    boolean succeeded = failure == null && response.statusCode() / 100 == 2;
+                    if (succeeded) {
+                        stats.recordSuccess(dueNanos);
+                    } else {
+                        stats.recordFailure(dueNanos);
+                    }
+                    return succeeded;
+                });
+    }
+
+    private static void assertWithinThresholds(SoftAssertions softly, EndpointStats stats, Duration maxP99, Duration elapsed) {
+        softly.assertThat(stats.getLatencyAtPercentile(99))
+                .as("%s p99 latency", stats.getName())
+                .isLessThanOrEqualTo(maxP99);
+        softly.assertThat(stats.getThroughput(elapsed))
+                .as("%s throughput per second", stats.getName())
+                .isGreaterThanOrEqualTo(RATE * MIN_THROUGHPUT_RATIO);
+        softly.assertThat(stats.getFailureRate())
+                .as("%s failure rate", stats.getName())
+                .isLessThanOrEqualTo(MAX_FAILURE_RATE);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpRequest.BodyPublisher json(Object body) {
+        try {
+            return HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.amigoscode.testing.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+//with threads.virtual.enabled=true every request is handled on its own virtual thread,
+//so requests blocked on jdbc or on the card provider no longer hold a platform thread.
+//how many of them touch the database at once is then bounded by the hikari pool size
+@Configuration
+@ConditionalOnProperty(value = "threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -20,6 +20,7 @@ import java.util.UUID;
 public class Customer {
 
     @Id
+    @Column(columnDefinition = "uuid")
     private UUID id;
     @NotBlank
     @Column(nullable = false)
@@ -0,0 +1,9 @@
+package com.amigoscode.testing.customer;
+
+import java.util.List;
+
+public interface CustomerBulkInsert {
+
+    //persists brand new customers in one transaction so hibernate can batch the inserts
+    void insertAll(List<Customer> customers);
+}
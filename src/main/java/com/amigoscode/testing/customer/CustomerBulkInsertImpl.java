@@ -0,0 +1,25 @@
+package com.amigoscode.testing.customer;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+public class CustomerBulkInsertImpl implements CustomerBulkInsert {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    //save() would merge every customer because the id is assigned up front, costing a select per row.
+    //persist() goes straight to the insert queue, which hibernate then flushes in jdbc batches
+    @Override
+    @Transactional
+    public void insertAll(List<Customer> customers) {
+        for (Customer customer : customers) {
+            entityManager.persist(customer);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
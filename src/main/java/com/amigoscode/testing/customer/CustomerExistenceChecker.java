@@ -0,0 +1,77 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.datasource.ReadYourWrites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+//answers "does this customer exist" without loading the customer, remembering ids already seen.
+//customers are never deleted, so a known id stays valid. a customer the replica does not have is looked
+//for on the primary before a payment is turned away
+@Component
+public class CustomerExistenceChecker {
+
+    private final CustomerRepository customerRepository;
+    private final KnownCustomerIds knownCustomerIds;
+    private final ReadYourWrites readYourWrites;
+
+    @Autowired
+    public CustomerExistenceChecker(CustomerRepository customerRepository,
+                                    ReadYourWrites readYourWrites,
+                                    @Value("${customer.known-ids.capacity:262144}") int capacity) {
+        this(customerRepository, new KnownCustomerIds(capacity), readYourWrites);
+    }
+
+    CustomerExistenceChecker(CustomerRepository customerRepository, KnownCustomerIds knownCustomerIds,
+                             ReadYourWrites readYourWrites) {
+        this.customerRepository = customerRepository;
+        this.knownCustomerIds = knownCustomerIds;
+        this.readYourWrites = readYourWrites;
+    }
+
+    public boolean exists(UUID customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        if (knownCustomerIds.contains(customerId)) {
+            return true;
+        }
+        boolean exists = readYourWrites.readConfirmingMiss(customerId,
+                () -> customerRepository.existsById(customerId), found -> !found);
+        if (exists) {
+            knownCustomerIds.add(customerId);
+        }
+        return exists;
+    }
+
+    public Set<UUID> selectExisting(Collection<UUID> customerIds) {
+        Set<UUID> existing = new HashSet<>();
+        List<UUID> unknown = new ArrayList<>();
+        for (UUID customerId : customerIds) {
+            if (customerId == null) {
+                continue;
+            }
+            if (knownCustomerIds.contains(customerId)) {
+                existing.add(customerId);
+            } else {
+                unknown.add(customerId);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            for (UUID customerId : readYourWrites.readAllConfirmingMiss(unknown,
+                    () -> customerRepository.selectExistingIds(unknown), found -> found.size() < unknown.size())) {
+                knownCustomerIds.add(customerId);
+                existing.add(customerId);
+            }
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,78 @@
+package com.amigoscode.testing.customer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+//write-through phone number -> (id, name) cache in front of CustomerRepository.selectCustomerByPhoneNumber.
+//only customers known to be stored are cached, the unique constraint on phone_number stays the final arbiter
+@Component
+public class CustomerPhoneNumberCache {
+
+    private final Cache<String, CachedCustomer> customersByPhoneNumber;
+
+    //hit rate, size and evictions are published as the cache.* meters tagged cache=customer.phone-number
+    @Autowired
+    public CustomerPhoneNumberCache(@Value("${customer.phone-cache.max-size:100000}") long maxSize,
+                                    @Value("${customer.phone-cache.ttl:PT10M}") Duration ttl,
+                                    MeterRegistry meterRegistry) {
+        this(maxSize, ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, customersByPhoneNumber, "customer.phone-number");
+    }
+
+    public CustomerPhoneNumberCache(long maxSize, Duration ttl) {
+        this(maxSize, ttl, Ticker.systemTicker());
+    }
+
+    CustomerPhoneNumberCache(long maxSize, Duration ttl, Ticker ticker) {
+        this.customersByPhoneNumber = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                //keeps evictions on the calling thread instead of the common pool
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<Customer> get(String phoneNumber) {
+        CachedCustomer cachedCustomer = customersByPhoneNumber.getIfPresent(phoneNumber);
+        if (cachedCustomer == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new Customer(cachedCustomer.id, cachedCustomer.name, phoneNumber));
+    }
+
+    public void put(Customer customer) {
+        customersByPhoneNumber.put(customer.getPhoneNumber(), new CachedCustomer(customer.getId(), customer.getName()));
+    }
+
+    public void invalidate(String phoneNumber) {
+        customersByPhoneNumber.invalidate(phoneNumber);
+    }
+
+    //hits, misses and evictions since startup
+    public CacheStats stats() {
+        return customersByPhoneNumber.stats();
+    }
+
+    private static final class CachedCustomer {
+        private final UUID id;
+        private final String name;
+
+        private CachedCustomer(UUID id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
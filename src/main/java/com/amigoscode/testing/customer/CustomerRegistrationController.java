@@ -1,26 +1,51 @@
 package com.amigoscode.testing.customer;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @RestController
 @RequestMapping("api/v1/customer-registration")
 public class CustomerRegistrationController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final CustomerRegistrationService customerRegistrationService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public CustomerRegistrationController(CustomerRegistrationService customerRegistrationService) {
+    public CustomerRegistrationController(CustomerRegistrationService customerRegistrationService, ObjectMapper objectMapper) {
         this.customerRegistrationService = customerRegistrationService;
+        this.objectMapper = objectMapper;
     }
 
     @PutMapping
     public void registerNewCustomer(@Valid @RequestBody CustomerRegistrationRequest request) {
         customerRegistrationService.registerNewCustomer(request);
     }
+
+    @PutMapping(path = "bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<CustomerRegistrationResult> registerNewCustomers(@RequestBody List<CustomerRegistrationRequest> requests) {
+        return customerRegistrationService.registerNewCustomers(requests);
+    }
+
+    //one registration request per line, read as the service consumes it instead of buffering the whole body
+    @PutMapping(path = "bulk", consumes = APPLICATION_NDJSON_VALUE)
+    public List<CustomerRegistrationResult> registerNewCustomers(InputStream body) throws IOException {
+        try (MappingIterator<CustomerRegistrationRequest> requests = objectMapper
+                .readerFor(CustomerRegistrationRequest.class)
+                .readValues(body)) {
+            return customerRegistrationService.registerNewCustomers(() -> requests);
+        }
+    }
 }
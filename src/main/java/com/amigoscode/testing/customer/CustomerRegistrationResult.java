@@ -0,0 +1,28 @@
+package com.amigoscode.testing.customer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+@AllArgsConstructor
+@Getter
+@ToString
+public class CustomerRegistrationResult {
+
+    public enum Status {
+        REGISTERED,
+        //same phone number and same name, nothing to do
+        ALREADY_REGISTERED,
+        PHONE_NUMBER_TAKEN,
+        INVALID_PHONE_NUMBER,
+        INVALID_NAME
+    }
+
+    //position of the row in the submitted batch
+    private final int index;
+    private final String phoneNumber;
+    private final UUID customerId;
+    private final Status status;
+}
@@ -1,40 +1,244 @@
 package com.amigoscode.testing.customer;
 
+import com.amigoscode.testing.customer.CustomerRegistrationResult.Status;
+import com.amigoscode.testing.datasource.ReadYourWrites;
+import com.amigoscode.testing.datasource.ReplicaRoutingDataSource;
 import com.amigoscode.testing.util.PhoneNumberValidator;
+import com.amigoscode.testing.util.TimeOrderedUuidGenerator;
 import lombok.AllArgsConstructor;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
-import static java.util.UUID.randomUUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Service
 @AllArgsConstructor
 public class CustomerRegistrationService {
+
+    //rows resolved with one IN query and inserted in one transaction
+    static final int BULK_CHUNK_SIZE = 500;
+
     private final CustomerRepository customerRepository;
     private final PhoneNumberValidator phoneNumberValidator;
+    private final CustomerPhoneNumberCache phoneNumberCache;
+    private final TimeOrderedUuidGenerator customerIdGenerator;
+    private final ReadYourWrites readYourWrites;
+    //normalized phone number -> registration of it running on another thread, done once it has finished
+    private final ConcurrentMap<String, CompletableFuture<Void>> registrationsInFlight = new ConcurrentHashMap<>();
 
     public void registerNewCustomer(CustomerRegistrationRequest request) {
-        String phoneNumber = request.getCustomer().getPhoneNumber();
+        //the same number written differently must map to one customer, so it is stored in E.164 form
+        String phoneNumber = phoneNumberValidator.normalize(request.getCustomer().getPhoneNumber())
+                .orElseThrow(() -> new IllegalStateException(
+                        String.format("phone number: [%s] is not valid", request.getCustomer().getPhoneNumber())));
+        request.getCustomer().setPhoneNumber(phoneNumber);
 
-        if(!phoneNumberValidator.test(phoneNumber)) {
-            throw new IllegalStateException(String.format("phone number: [%s] is not valid", phoneNumber));
+        //one registration per number at a time. retries of the same registration wait for the first one and
+        //then find its customer in the phone number cache, instead of all racing to the unique constraint
+        while (true) {
+            CompletableFuture<Void> registration = new CompletableFuture<>();
+            CompletableFuture<Void> inFlight = registrationsInFlight.putIfAbsent(phoneNumber, registration);
+            if (inFlight == null) {
+                try {
+                    register(request, phoneNumber);
+                } finally {
+                    registrationsInFlight.remove(phoneNumber, registration);
+                    registration.complete(null);
+                }
+                return;
+            }
+            inFlight.join();
         }
+    }
 
-        Optional<Customer> customerOptional = customerRepository.selectCustomerByPhoneNumber(phoneNumber);
+    private void register(CustomerRegistrationRequest request, String phoneNumber) {
+        Optional<Customer> customerOptional = selectCustomerByPhoneNumber(phoneNumber);
         if (customerOptional.isPresent()) {
             Customer customer = customerOptional.get();
             if (customer.getName().equals(request.getCustomer().getName())) {
                 return;
             }
-                throw new IllegalStateException(String.format("phone number: [%s] is taken", phoneNumber));
+            throw new IllegalStateException(String.format("phone number: [%s] is taken", phoneNumber));
+        }
+
+        if (request.getCustomer().getId() == null) {
+            request.getCustomer().setId(customerIdGenerator.next());
+        }
+
+        try {
+            customerRepository.save(request.getCustomer());
+        } catch (DataIntegrityViolationException e) {
+            //someone registered the number since our lookup, the database decides who owns it
+            phoneNumberCache.invalidate(phoneNumber);
+            Optional<Customer> winner = ReplicaRoutingDataSource.onPrimary(
+                    () -> customerRepository.selectCustomerByPhoneNumber(phoneNumber));
+            winner.ifPresent(phoneNumberCache::put);
+            if (winner.isPresent() && winner.get().getName().equals(request.getCustomer().getName())) {
+                return;
             }
+            throw new IllegalStateException(String.format("phone number: [%s] is taken", phoneNumber), e);
+        }
+        wrote(request.getCustomer());
+    }
+
+    public List<CustomerRegistrationResult> registerNewCustomers(Iterable<CustomerRegistrationRequest> requests) {
+        List<CustomerRegistrationResult> results = new ArrayList<>();
+        List<CustomerRegistrationRequest> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
 
-            if (request.getCustomer().getId() == null) {
-                request.getCustomer().setId(randomUUID());
+        for (CustomerRegistrationRequest request : requests) {
+            chunk.add(request);
+            if (chunk.size() == BULK_CHUNK_SIZE) {
+                registerChunk(chunk, results);
+                chunk.clear();
             }
+        }
+        if (!chunk.isEmpty()) {
+            registerChunk(chunk, results);
+        }
 
-            customerRepository.save(request.getCustomer());
+        return results;
+    }
+
+    private void registerChunk(List<CustomerRegistrationRequest> chunk, List<CustomerRegistrationResult> results) {
+        int offset = results.size();
+
+        //validate every row first so only valid numbers reach the database
+        Status[] statuses = new Status[chunk.size()];
+        Set<String> phoneNumbers = new HashSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Customer customer = chunk.get(i).getCustomer();
+            Optional<String> phoneNumber = customer == null
+                    ? Optional.empty()
+                    : phoneNumberValidator.normalize(customer.getPhoneNumber());
+            if (phoneNumber.isEmpty()) {
+                statuses[i] = Status.INVALID_PHONE_NUMBER;
+            } else if (customer.getName() == null || customer.getName().isBlank()) {
+                statuses[i] = Status.INVALID_NAME;
+            } else {
+                customer.setPhoneNumber(phoneNumber.get());
+                phoneNumbers.add(phoneNumber.get());
+            }
+        }
+
+        //cached numbers first, then one round trip for the rest of the chunk
+        Map<String, Customer> customersByPhoneNumber = new HashMap<>();
+        for (Iterator<String> iterator = phoneNumbers.iterator(); iterator.hasNext(); ) {
+            String phoneNumber = iterator.next();
+            Optional<Customer> cached = phoneNumberCache.get(phoneNumber);
+            if (cached.isPresent()) {
+                customersByPhoneNumber.put(phoneNumber, cached.get());
+                iterator.remove();
+            }
         }
+        if (!phoneNumbers.isEmpty()) {
+            for (Customer existing : readYourWrites.readAll(phoneNumbers,
+                    () -> customerRepository.selectCustomersByPhoneNumbers(phoneNumbers))) {
+                customersByPhoneNumber.put(existing.getPhoneNumber(), existing);
+                phoneNumberCache.put(existing);
+            }
+        }
+
+        //same rules as registerNewCustomer, including rows repeated within the chunk
+        List<Customer> newCustomers = new ArrayList<>();
+        List<Integer> newCustomerPositions = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Customer customer = chunk.get(i).getCustomer();
+            if (statuses[i] != null) {
+                results.add(new CustomerRegistrationResult(offset + i,
+                        customer == null ? null : customer.getPhoneNumber(), null, statuses[i]));
+                continue;
+            }
+
+            Customer existing = customersByPhoneNumber.get(customer.getPhoneNumber());
+            if (existing != null) {
+                Status status = existing.getName().equals(customer.getName())
+                        ? Status.ALREADY_REGISTERED
+                        : Status.PHONE_NUMBER_TAKEN;
+                results.add(new CustomerRegistrationResult(offset + i, customer.getPhoneNumber(), existing.getId(), status));
+                continue;
+            }
+
+            if (customer.getId() == null) {
+                customer.setId(customerIdGenerator.next());
+            }
+            newCustomers.add(customer);
+            newCustomerPositions.add(results.size());
+            customersByPhoneNumber.put(customer.getPhoneNumber(), customer);
+            results.add(new CustomerRegistrationResult(offset + i, customer.getPhoneNumber(), customer.getId(), Status.REGISTERED));
+        }
+
+        while (!newCustomers.isEmpty()) {
+            try {
+                customerRepository.insertAll(newCustomers);
+                newCustomers.forEach(this::wrote);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                //someone registered some of the numbers since our lookup and the chunk was rolled back.
+                //those rows are reported like any registered number and the rest are inserted again
+                if (!removeRegisteredElsewhere(newCustomers, newCustomerPositions, results)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    //looks the new customers' numbers up again on the primary, returns false if none of them was taken
+    private boolean removeRegisteredElsewhere(List<Customer> newCustomers, List<Integer> positions,
+                                              List<CustomerRegistrationResult> results) {
+        Set<String> phoneNumbers = new HashSet<>();
+        newCustomers.forEach(customer -> phoneNumbers.add(customer.getPhoneNumber()));
+        Map<String, Customer> winners = new HashMap<>();
+        for (Customer winner : ReplicaRoutingDataSource.onPrimary(
+                () -> customerRepository.selectCustomersByPhoneNumbers(phoneNumbers))) {
+            winners.put(winner.getPhoneNumber(), winner);
+            phoneNumberCache.put(winner);
+        }
+
+        boolean removed = false;
+        for (int i = newCustomers.size() - 1; i >= 0; i--) {
+            Customer customer = newCustomers.get(i);
+            Customer winner = winners.get(customer.getPhoneNumber());
+            if (winner != null) {
+                Status status = winner.getName().equals(customer.getName())
+                        ? Status.ALREADY_REGISTERED
+                        : Status.PHONE_NUMBER_TAKEN;
+                int position = positions.get(i);
+                results.set(position, new CustomerRegistrationResult(
+                        results.get(position).getIndex(), customer.getPhoneNumber(), winner.getId(), status));
+                newCustomers.remove(i);
+                positions.remove(i);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private Optional<Customer> selectCustomerByPhoneNumber(String phoneNumber) {
+        Optional<Customer> cached = phoneNumberCache.get(phoneNumber);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        Optional<Customer> customerOptional = readYourWrites.read(phoneNumber,
+                () -> customerRepository.selectCustomerByPhoneNumber(phoneNumber));
+        customerOptional.ifPresent(phoneNumberCache::put);
+        return customerOptional;
+    }
+
+    //the replica may not have the customer yet, lookups by its id or number go to the primary for a while
+    private void wrote(Customer customer) {
+        phoneNumberCache.put(customer);
+        readYourWrites.wrote(customer.getId());
+        readYourWrites.wrote(customer.getPhoneNumber());
     }
+}
@@ -4,13 +4,30 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface CustomerRepository extends CrudRepository<Customer, UUID> {
+//lookups are read only transactions, so they go to the replica when there is one
+public interface CustomerRepository extends CrudRepository<Customer, UUID>, CustomerBulkInsert {
 
+    @Override
+    @Transactional(readOnly = true)
+    boolean existsById(UUID id);
+
+    @Transactional(readOnly = true)
     @Query(value = "select id, name, phone_number from customer where phone_number = :phone_number", nativeQuery = true)
     Optional<Customer> selectCustomerByPhoneNumber(@Param("phone_number") String phoneNumber);
+
+    @Transactional(readOnly = true)
+    @Query(value = "select id, name, phone_number from customer where phone_number in (:phone_numbers)", nativeQuery = true)
+    List<Customer> selectCustomersByPhoneNumbers(@Param("phone_numbers") Collection<String> phoneNumbers);
+
+    @Transactional(readOnly = true)
+    @Query("select c.id from Customer c where c.id in :ids")
+    List<UUID> selectExistingIds(@Param("ids") Collection<UUID> ids);
 }
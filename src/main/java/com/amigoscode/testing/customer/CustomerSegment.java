@@ -0,0 +1,26 @@
+package com.amigoscode.testing.customer;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.UUID;
+
+//the segment a customer was put in, customers without one are in the default segment
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@ToString
+@Table(name = "customer_segment")
+public class CustomerSegment {
+
+    @Id
+    @Column(columnDefinition = "uuid")
+    private UUID customerId;
+    @Column(nullable = false)
+    private String segment;
+}
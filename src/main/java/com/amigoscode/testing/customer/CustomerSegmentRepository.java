@@ -0,0 +1,25 @@
+package com.amigoscode.testing.customer;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+//lookups are read only transactions, so they go to the replica when there is one
+public interface CustomerSegmentRepository extends CrudRepository<CustomerSegment, UUID> {
+
+    @Override
+    @Transactional(readOnly = true)
+    Optional<CustomerSegment> findById(UUID customerId);
+
+    @Transactional(readOnly = true)
+    @Query("select s from CustomerSegment s where s.customerId in :customerIds")
+    List<CustomerSegment> selectByCustomerIds(@Param("customerIds") Collection<UUID> customerIds);
+}
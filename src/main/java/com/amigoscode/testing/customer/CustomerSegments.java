@@ -0,0 +1,56 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.datasource.ReadYourWrites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+//which segment customers are in. a customer put in one is read from the primary for a while, like a new customer
+@Component
+public class CustomerSegments {
+
+    private final CustomerSegmentRepository customerSegmentRepository;
+    private final CustomerExistenceChecker customerExistenceChecker;
+    private final ReadYourWrites readYourWrites;
+
+    @Autowired
+    public CustomerSegments(CustomerSegmentRepository customerSegmentRepository,
+                            CustomerExistenceChecker customerExistenceChecker,
+                            ReadYourWrites readYourWrites) {
+        this.customerSegmentRepository = customerSegmentRepository;
+        this.customerExistenceChecker = customerExistenceChecker;
+        this.readYourWrites = readYourWrites;
+    }
+
+    //empty for a customer in the default segment
+    public Optional<String> segmentOf(UUID customerId) {
+        return readYourWrites.read(customerId, () -> customerSegmentRepository.findById(customerId))
+                .map(CustomerSegment::getSegment);
+    }
+
+    //only the customers that are in a segment, one query for all of them
+    public Map<UUID, String> segmentsOf(Collection<UUID> customerIds) {
+        Map<UUID, String> segments = new HashMap<>();
+        if (customerIds.isEmpty()) {
+            return segments;
+        }
+        for (CustomerSegment customerSegment : readYourWrites.readAll(customerIds,
+                () -> customerSegmentRepository.selectByCustomerIds(customerIds))) {
+            segments.put(customerSegment.getCustomerId(), customerSegment.getSegment());
+        }
+        return segments;
+    }
+
+    public void assign(UUID customerId, String segment) {
+        if (!customerExistenceChecker.exists(customerId)) {
+            throw new IllegalStateException(String.format("Customer with id [%s] not found", customerId));
+        }
+        customerSegmentRepository.save(new CustomerSegment(customerId, segment));
+        readYourWrites.wrote(customerId);
+    }
+}
@@ -0,0 +1,101 @@
+package com.amigoscode.testing.customer;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+//bounded set of customer ids confirmed to exist, stored as two longs per id instead of boxed UUID objects.
+//ids hash to a bucket of BUCKET_SIZE slots; a full bucket drops its oldest id to make room
+public class KnownCustomerIds {
+
+    static final int BUCKET_SIZE = 4;
+    private static final int LONGS_PER_BUCKET = BUCKET_SIZE * 2;
+    private static final int STRIPES = 64;
+
+    //[msb, lsb] pairs, an all zero pair is an empty slot
+    private final long[] slots;
+    private final int bucketMask;
+    private final StampedLock[] locks = new StampedLock[STRIPES];
+
+    public KnownCustomerIds(int capacity) {
+        int buckets = Integer.highestOneBit(Math.max(capacity / BUCKET_SIZE, 1));
+        this.slots = new long[buckets * LONGS_PER_BUCKET];
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    public boolean contains(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        if (isNil(msb, lsb)) {
+            return false;
+        }
+        int bucket = bucketOf(msb, lsb);
+        StampedLock lock = locks[bucket & (STRIPES - 1)];
+
+        long stamp = lock.tryOptimisticRead();
+        boolean found = bucketContains(bucket, msb, lsb);
+        if (lock.validate(stamp)) {
+            return found;
+        }
+
+        //a writer touched the stripe while we were reading, read again under the lock
+        stamp = lock.readLock();
+        try {
+            return bucketContains(bucket, msb, lsb);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void add(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        if (isNil(msb, lsb)) {
+            return;
+        }
+        int bucket = bucketOf(msb, lsb);
+        StampedLock lock = locks[bucket & (STRIPES - 1)];
+
+        long stamp = lock.writeLock();
+        try {
+            if (bucketContains(bucket, msb, lsb)) {
+                return;
+            }
+            //newest id goes first, the oldest falls off the end
+            int start = bucket * LONGS_PER_BUCKET;
+            System.arraycopy(slots, start, slots, start + 2, LONGS_PER_BUCKET - 2);
+            slots[start] = msb;
+            slots[start + 1] = lsb;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //the nil uuid is indistinguishable from an empty slot, so it is never stored
+    private static boolean isNil(long msb, long lsb) {
+        return msb == 0 && lsb == 0;
+    }
+
+    private boolean bucketContains(int bucket, long msb, long lsb) {
+        int start = bucket * LONGS_PER_BUCKET;
+        for (int slot = start; slot < start + LONGS_PER_BUCKET; slot += 2) {
+            if (slots[slot] == msb && slots[slot + 1] == lsb) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int bucketOf(long msb, long lsb) {
+        //murmur3 finalizer, random and time ordered ids both spread evenly
+        long hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & bucketMask;
+    }
+}
@@ -0,0 +1,78 @@
+package com.amigoscode.testing.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+//remembers keys (customer ids, phone numbers) written in the last datasource.replica.max-lag, and sends reads
+//of those keys to the primary so a customer can pay straight after registering. max-lag is a time window and
+//not the replica's measured lag, reads that must not miss a row can have their misses read again on the primary.
+//without a replica there is no lag and nothing is remembered
+@Component
+public class ReadYourWrites {
+
+    //a key pushed out early is read from the replica, which has most likely caught up by then
+    private static final long MAX_RECENT_WRITES = 100_000;
+
+    private final Cache<Object, Boolean> recentWrites;
+    private final boolean enabled;
+
+    @Autowired
+    public ReadYourWrites(@Value("${datasource.replica.enabled:false}") boolean replicaEnabled,
+                          @Value("${datasource.replica.max-lag:PT1S}") Duration maxLag) {
+        this(replicaEnabled ? maxLag : Duration.ZERO, Ticker.systemTicker());
+    }
+
+    ReadYourWrites(Duration maxLag, Ticker ticker) {
+        this.enabled = !maxLag.isZero();
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(MAX_RECENT_WRITES)
+                .expireAfterWrite(maxLag)
+                .ticker(ticker)
+                //keeps evictions on the calling thread instead of the common pool
+                .executor(Runnable::run)
+                .build();
+    }
+
+    public void wrote(Object key) {
+        if (enabled) {
+            recentWrites.put(key, Boolean.TRUE);
+        }
+    }
+
+    public <T> T read(Object key, Supplier<T> read) {
+        return wroteRecently(key) ? ReplicaRoutingDataSource.onPrimary(read) : read.get();
+    }
+
+    //on the primary if any of the keys was written recently
+    public <T> T readAll(Collection<?> keys, Supplier<T> read) {
+        return keys.stream().anyMatch(this::wroteRecently) ? ReplicaRoutingDataSource.onPrimary(read) : read.get();
+    }
+
+    //like read, and a result from the replica that missed is read again on the primary, for a replica
+    //further behind than max-lag
+    public <T> T readConfirmingMiss(Object key, Supplier<T> read, Predicate<T> missed) {
+        return wroteRecently(key) ? ReplicaRoutingDataSource.onPrimary(read) : confirmMiss(read, missed);
+    }
+
+    public <T> T readAllConfirmingMiss(Collection<?> keys, Supplier<T> read, Predicate<T> missed) {
+        return keys.stream().anyMatch(this::wroteRecently) ? ReplicaRoutingDataSource.onPrimary(read) : confirmMiss(read, missed);
+    }
+
+    private <T> T confirmMiss(Supplier<T> read, Predicate<T> missed) {
+        T result = read.get();
+        return enabled && missed.test(result) ? ReplicaRoutingDataSource.onPrimary(read) : result;
+    }
+
+    private boolean wroteRecently(Object key) {
+        return enabled && recentWrites.getIfPresent(key) != null;
+    }
+}
@@ -1,8 +1,21 @@
 package com.amigoscode.testing.payment;
 
-import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 public interface CardPaymentCharger {
 
-    CardPaymentCharge chargeCard(String source, BigDecimal amount, Currency currency, String description);
+    CardPaymentCharge chargeCard(String source, Money amount, String description);
+
+    //providers that deduplicate retries themselves get the client's idempotency key, others just charge
+    default CardPaymentCharge chargeCard(String source, Money amount, String description, String idempotencyKey) {
+        return chargeCard(source, amount, description);
+    }
+
+    //completes once the provider answers, without holding the caller's thread meanwhile
+    CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description);
+
+    default CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description,
+                                                                 String idempotencyKey) {
+        return chargeCardAsync(source, amount, description);
+    }
 }
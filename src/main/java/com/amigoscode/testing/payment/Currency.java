@@ -1,7 +1,19 @@
 package com.amigoscode.testing.payment;
 
+//the ordinal is what the payment tables and the payment journal store, so new currencies go at the end
 public enum Currency {
-    USD,
-    GBP,
-    EUR
+    USD(2),
+    GBP(2),
+    EUR(2);
+
+    //digits after the decimal point, one minor unit is 10^-scale of the currency
+    private final int scale;
+
+    Currency(int scale) {
+        this.scale = scale;
+    }
+
+    public int getScale() {
+        return scale;
+    }
 }
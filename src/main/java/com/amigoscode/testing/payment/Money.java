@@ -0,0 +1,90 @@
+package com.amigoscode.testing.payment;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+//an amount as a whole number of the currency's minor units (cents, pence), so arithmetic needs no BigDecimal.
+//stored as the amount and currency columns, and read and written in json as a decimal amount and a currency
+@Embeddable
+public final class Money {
+
+    private long minorUnits;
+    @Enumerated(EnumType.ORDINAL)
+    private Currency currency;
+
+    //for JPA
+    protected Money() {
+    }
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = Objects.requireNonNull(currency, "currency");
+    }
+
+    public static Money ofMinor(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    @JsonCreator
+    public static Money of(@JsonProperty("amount") BigDecimal amount,
+                           @JsonProperty("currency") Currency currency) {
+        Objects.requireNonNull(amount, "amount");
+        Objects.requireNonNull(currency, "currency");
+        try {
+            return new Money(amount.movePointRight(currency.getScale()).longValueExact(), currency);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    String.format("Amount [ %s ] is not a whole number of %s minor units", amount, currency), e);
+        }
+    }
+
+    @JsonIgnore
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    @JsonProperty("amount")
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getScale());
+    }
+
+    public Money plus(Money other) {
+        if (other.currency != currency) {
+            throw new IllegalArgumentException(String.format("Cannot add %s to %s", other.currency, currency));
+        }
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency == money.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + Objects.hashCode(currency);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + currency;
+    }
+}
@@ -1,7 +1,14 @@
 package com.amigoscode.testing.payment;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
 
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -18,11 +25,25 @@ import java.util.UUID;
 @EqualsAndHashCode
 public class Payment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = PaymentIdGenerator.NAME)
+    @GenericGenerator(name = PaymentIdGenerator.NAME, strategy = "com.amigoscode.testing.payment.PaymentIdGenerator")
+    //assigned on insert, an id sent by a client would turn the insert into a merge
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private Long paymentId;
+    @Column(columnDefinition = "uuid", nullable = false)
     private UUID customerId;
-    private BigDecimal amount;
-    private Currency currency;
+    //the amount and currency columns and json fields
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "minorUnits", column = @Column(name = "amount", nullable = false)),
+            @AttributeOverride(name = "currency", column = @Column(name = "currency", columnDefinition = "smallint", nullable = false))
+    })
+    @JsonUnwrapped
+    private Money amount;
     private String source;
     private String description;
+
+    public Payment(Long paymentId, UUID customerId, BigDecimal amount, Currency currency, String source, String description) {
+        this(paymentId, customerId, Money.of(amount, currency), source, description);
+    }
 }
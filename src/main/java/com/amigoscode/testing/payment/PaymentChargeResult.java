@@ -0,0 +1,27 @@
+package com.amigoscode.testing.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+@AllArgsConstructor
+@Getter
+@ToString
+public class PaymentChargeResult {
+
+    public enum Status {
+        CHARGED,
+        CUSTOMER_NOT_FOUND,
+        CURRENCY_NOT_SUPPORTED,
+        CARD_NOT_DEBITED,
+        CHARGE_FAILED
+    }
+
+    //position of the payment in the submitted batch
+    private final int index;
+    private final UUID customerId;
+    private final Long paymentId;
+    private final Status status;
+}
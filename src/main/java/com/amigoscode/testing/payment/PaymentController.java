@@ -1,26 +1,102 @@
 package com.amigoscode.testing.payment;
 
+import com.amigoscode.testing.payment.currency.CurrencyPolicy;
+import com.amigoscode.testing.payment.currency.UnsupportedCurrencyException;
+import com.amigoscode.testing.payment.idempotency.IdempotencyService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("api/v1/payment")
 public class PaymentController {
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final PaymentService paymentService;
+    private final IdempotencyService idempotencyService;
+    private final CurrencyPolicy currencyPolicy;
+    private final PaymentHistoryService paymentHistoryService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter paymentHistoryEntryWriter;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService,
+                             IdempotencyService idempotencyService,
+                             CurrencyPolicy currencyPolicy,
+                             PaymentHistoryService paymentHistoryService,
+                             ObjectMapper objectMapper) {
         this.paymentService = paymentService;
+        this.idempotencyService = idempotencyService;
+        this.currencyPolicy = currencyPolicy;
+        this.paymentHistoryService = paymentHistoryService;
+        this.objectMapper = objectMapper;
+        //flushed once per page rather than once per payment
+        this.paymentHistoryEntryWriter = objectMapper.writerFor(PaymentHistoryEntry.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @PostMapping
+    public CompletableFuture<Void> makePayment(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                               @RequestBody PaymentRequest paymentRequest) {
+        UUID customerId = paymentRequest.getPayment().getCustomerId();
+        //a currency no segment takes is refused before the customer is looked up or anything is charged.
+        //PaymentService checks the customer's own segment, and the batch endpoint leaves it all to it
+        Money amount = paymentRequest.getPayment().getAmount();
+        Currency currency = amount == null ? null : amount.getCurrency();
+        if (!currencyPolicy.isAcceptedByAnySegment(currency)) {
+            throw new UnsupportedCurrencyException(currency);
+        }
+        if (idempotencyKey == null) {
+            return paymentService.chargeCardAsync(customerId, paymentRequest);
+        }
+        String fingerprint = IdempotencyService.fingerprint(customerId, amount, paymentRequest.getPayment().getSource());
+        return idempotencyService.execute(idempotencyKey, fingerprint,
+                () -> paymentService.chargeCardAsync(customerId, paymentRequest, idempotencyKey));
+    }
+
+    //a json array written page by page as the pages are read, so memory stays flat however long the history is.
+    //afterPaymentId resumes from the last payment a client has seen
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> getPayments(@RequestParam UUID customerId,
+                                                             @RequestParam(defaultValue = "0") long afterPaymentId) {
+        Iterable<List<PaymentHistoryEntry>> pages = paymentHistoryService.selectPaymentHistory(customerId, afterPaymentId);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                for (List<PaymentHistoryEntry> page : pages) {
+                    for (PaymentHistoryEntry entry : page) {
+                        paymentHistoryEntryWriter.writeValue(generator, entry);
+                    }
+                    generator.flush();
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
-    @RequestMapping
-    public void makePayment(@RequestBody PaymentRequest paymentRequest) {
-        paymentService.chargeCard(paymentRequest.getPayment().getCustomerId(), paymentRequest);
+    @PostMapping("batch")
+    public List<PaymentChargeResult> makePayments(@RequestBody List<PaymentRequest> paymentRequests) {
+        return paymentService.chargeCards(paymentRequests);
     }
 }
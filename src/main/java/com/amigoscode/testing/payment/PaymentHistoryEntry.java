@@ -0,0 +1,21 @@
+package com.amigoscode.testing.payment;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+//read only view of a stored payment, selected column by column instead of loading the entity
+@AllArgsConstructor
+@Getter
+@ToString
+public class PaymentHistoryEntry {
+    private final Long paymentId;
+    @JsonUnwrapped
+    private final Money amount;
+    private final String description;
+
+    public PaymentHistoryEntry(Long paymentId, long amountMinorUnits, Currency currency, String description) {
+        this(paymentId, Money.ofMinor(amountMinorUnits, currency), description);
+    }
+}
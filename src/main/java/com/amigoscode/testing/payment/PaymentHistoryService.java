@@ -0,0 +1,58 @@
+package com.amigoscode.testing.payment;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+@Service
+public class PaymentHistoryService {
+
+    private final PaymentRepository paymentRepository;
+    private final int pageSize;
+
+    @Autowired
+    public PaymentHistoryService(PaymentRepository paymentRepository,
+                                 @Value("${payment.history.page-size:500}") int pageSize) {
+        this.paymentRepository = paymentRepository;
+        this.pageSize = pageSize;
+    }
+
+    //a customer's payments after the given payment id in payment id order, one page in memory at a time.
+    //each page is fetched once the previous one has been consumed
+    public Iterable<List<PaymentHistoryEntry>> selectPaymentHistory(UUID customerId, long afterPaymentId) {
+        return () -> new Iterator<>() {
+            private List<PaymentHistoryEntry> page;
+            private long lastPaymentId = afterPaymentId;
+            private boolean isLastPage;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null && !isLastPage) {
+                    page = paymentRepository.selectPaymentHistory(customerId, lastPaymentId, PageRequest.of(0, pageSize));
+                    isLastPage = page.size() < pageSize;
+                    if (page.isEmpty()) {
+                        page = null;
+                    }
+                }
+                return page != null;
+            }
+
+            @Override
+            public List<PaymentHistoryEntry> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<PaymentHistoryEntry> next = page;
+                lastPaymentId = next.get(next.size() - 1).getPaymentId();
+                page = null;
+                return next;
+            }
+        };
+    }
+}
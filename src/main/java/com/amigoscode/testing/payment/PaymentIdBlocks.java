@@ -0,0 +1,36 @@
+package com.amigoscode.testing.payment;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+//payment ids for rows written without hibernate, drawn the way PaymentIdGenerator draws them: every value of
+//payment_id_seq is the first of a block of PaymentIdGenerator.BLOCK_SIZE ids, so both can share the sequence
+public class PaymentIdBlocks {
+
+    private final JdbcTemplate jdbcTemplate;
+    //not synchronized: a virtual thread drawing a block would stay pinned to its carrier for the sequence call
+    private final Lock lock = new ReentrantLock();
+
+    //guarded by lock
+    private long next;
+    private long limit;
+
+    public PaymentIdBlocks(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long next() {
+        lock.lock();
+        try {
+            if (next == limit) {
+                next = jdbcTemplate.queryForObject("select next value for " + PaymentIdGenerator.SEQUENCE_NAME, Long.class);
+                limit = next + PaymentIdGenerator.BLOCK_SIZE;
+            }
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
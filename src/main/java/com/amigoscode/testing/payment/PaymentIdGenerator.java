@@ -0,0 +1,27 @@
+package com.amigoscode.testing.payment;
+
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+//payment ids are taken from payment_id_seq a block at a time (pooled-lo): one sequence call hands out
+//BLOCK_SIZE ids, so an id is known as soon as a payment is persisted and hibernate can send the
+//inserts in jdbc batches instead of one round trip per payment for a generated key.
+//the block size is the sequence's increment, changing it means a migration altering the sequence to match
+public class PaymentIdGenerator extends SequenceStyleGenerator {
+
+    static final String NAME = "payment_id";
+    static final String SEQUENCE_NAME = "payment_id_seq";
+    static final int BLOCK_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        params.setProperty(SEQUENCE_PARAM, SEQUENCE_NAME);
+        params.setProperty(INCREMENT_PARAM, String.valueOf(BLOCK_SIZE));
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
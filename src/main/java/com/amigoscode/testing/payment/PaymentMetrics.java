@@ -0,0 +1,79 @@
+package com.amigoscode.testing.payment;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+//every meter is registered up front, so recording a payment is a clock read and an array lookup
+class PaymentMetrics {
+
+    enum Stage {
+        CUSTOMER_LOOKUP("customer_lookup"),
+        CURRENCY_CHECK("currency_check"),
+        CHARGE("charge"),
+        SAVE("save");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final String UNKNOWN_CURRENCY = "unknown";
+
+    private final Clock clock;
+    private final Timer[] stageTimers = new Timer[Stage.values().length];
+    //indexed by currency ordinal, the last slot holds payments without a currency
+    private final Counter[] successes = new Counter[CURRENCIES.length + 1];
+    private final Counter[] failures = new Counter[CURRENCIES.length + 1];
+
+    PaymentMetrics(MeterRegistry meterRegistry, String charger) {
+        this.clock = meterRegistry.config().clock();
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("payment.stage")
+                    .description("Time spent in each step of charging a card")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+        for (int i = 0; i < successes.length; i++) {
+            String currency = i < CURRENCIES.length ? CURRENCIES[i].name() : UNKNOWN_CURRENCY;
+            successes[i] = charges(meterRegistry, currency, charger, "success");
+            failures[i] = charges(meterRegistry, currency, charger, "failure");
+        }
+    }
+
+    long start() {
+        return clock.monotonicTime();
+    }
+
+    void record(Stage stage, long start) {
+        stageTimers[stage.ordinal()].record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    void success(Currency currency) {
+        successes[indexOf(currency)].increment();
+    }
+
+    void failure(Currency currency) {
+        failures[indexOf(currency)].increment();
+    }
+
+    private static int indexOf(Currency currency) {
+        return currency == null ? CURRENCIES.length : currency.ordinal();
+    }
+
+    private static Counter charges(MeterRegistry meterRegistry, String currency, String charger, String outcome) {
+        return Counter.builder("payment.charges")
+                .description("Card payments by outcome")
+                .tag("currency", currency)
+                .tag("charger", charger)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
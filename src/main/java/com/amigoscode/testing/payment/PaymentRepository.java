@@ -1,8 +1,45 @@
 package com.amigoscode.testing.payment;
 
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotal;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
 
 @Repository
 public interface PaymentRepository extends CrudRepository<Payment, Long> {
+
+    //keyset page, seeks past the last payment id seen on the (customer_id, payment_id) index instead of skipping rows
+    @Transactional(readOnly = true)
+    @Query("select new com.amigoscode.testing.payment.PaymentHistoryEntry(p.paymentId, p.amount.minorUnits, p.amount.currency, p.description) " +
+            "from Payment p " +
+            "where p.customerId = :customerId and p.paymentId > :afterPaymentId " +
+            "order by p.paymentId")
+    List<PaymentHistoryEntry> selectPaymentHistory(@Param("customerId") UUID customerId,
+                                                   @Param("afterPaymentId") long afterPaymentId,
+                                                   Pageable page);
+
+    //the order databases sort customer ids in, byte by byte, which is not the order of UUID.compareTo
+    Comparator<UUID> CUSTOMER_ID_ORDER = Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    //keyset page of the customers that have payments, read off the (customer_id, payment_id) index.
+    //a null afterCustomerId starts from the first customer
+    @Query("select distinct p.customerId from Payment p " +
+            "where :afterCustomerId is null or p.customerId > :afterCustomerId " +
+            "order by p.customerId")
+    List<UUID> selectCustomerIds(@Param("afterCustomerId") UUID afterCustomerId, Pageable page);
+
+    //what the totals of the given customers should be, for rebuilding them
+    @Query("select new com.amigoscode.testing.payment.totals.CustomerPaymentTotal(" +
+            "p.customerId, p.amount.currency, sum(p.amount.minorUnits), count(p), max(p.paymentId)) " +
+            "from Payment p where p.customerId in :customerIds group by p.customerId, p.amount.currency")
+    List<CustomerPaymentTotal> aggregateCustomerPaymentTotals(@Param("customerIds") Collection<UUID> customerIds);
 }
@@ -1,58 +1,257 @@
 package com.amigoscode.testing.payment;
 
-import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.customer.CustomerExistenceChecker;
+import com.amigoscode.testing.customer.CustomerSegments;
+import com.amigoscode.testing.payment.PaymentChargeResult.Status;
+import com.amigoscode.testing.payment.PaymentMetrics.Stage;
+import com.amigoscode.testing.payment.currency.CurrencyPolicy;
+import com.amigoscode.testing.payment.currency.UnsupportedCurrencyException;
+import com.amigoscode.testing.payment.resilience.ResilientCardPaymentCharger;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class PaymentService {
-    private final CustomerRepository customerRepository;
-    private final PaymentRepository paymentRepository;
+    private final CustomerExistenceChecker customerExistenceChecker;
+    private final CustomerSegments customerSegments;
+    private final PaymentWriter paymentWriter;
     private final CardPaymentCharger cardPaymentCharger;
-
-    private static final List<Currency> ACCEPTED_CURRENCIES = List.of(Currency.USD, Currency.GBP);
+    private final CurrencyPolicy currencyPolicy;
+    private final int batchConcurrency;
+    private final PaymentMetrics metrics;
 
     @Autowired
-    public PaymentService(CustomerRepository customerRepository, PaymentRepository paymentRepository, CardPaymentCharger cardPaymentCharger) {
-        this.customerRepository = customerRepository;
-        this.paymentRepository = paymentRepository;
+    public PaymentService(CustomerExistenceChecker customerExistenceChecker,
+                          CustomerSegments customerSegments,
+                          PaymentWriter paymentWriter,
+                          CardPaymentCharger cardPaymentCharger,
+                          CurrencyPolicy currencyPolicy,
+                          @Value("${payment.batch.concurrency:8}") int batchConcurrency,
+                          MeterRegistry meterRegistry) {
+        this.customerExistenceChecker = customerExistenceChecker;
+        this.customerSegments = customerSegments;
+        this.paymentWriter = paymentWriter;
         this.cardPaymentCharger = cardPaymentCharger;
+        this.currencyPolicy = currencyPolicy;
+        this.batchConcurrency = batchConcurrency;
+        this.metrics = new PaymentMetrics(meterRegistry, chargerName(cardPaymentCharger));
     }
 
     public void chargeCard(UUID customerId, PaymentRequest paymentRequest) {
+        Payment payment = paymentRequest.getPayment();
+        try {
+            validate(customerId, payment);
+
+            //charge card
+            CardPaymentCharge cardPaymentCharge;
+            long start = metrics.start();
+            try {
+                cardPaymentCharge = cardPaymentCharger.chargeCard(
+                        payment.getSource(),
+                        payment.getAmount(),
+                        payment.getDescription()
+                );
+            } finally {
+                metrics.record(Stage.CHARGE, start);
+            }
+
+            recordCharge(customerId, payment, cardPaymentCharge);
+        } catch (RuntimeException e) {
+            metrics.failure(currencyOf(payment));
+            throw e;
+        }
+        metrics.success(currencyOf(payment));
+    }
+
+    //same as chargeCard, but the caller is released while the provider call is in flight
+    public CompletableFuture<Void> chargeCardAsync(UUID customerId, PaymentRequest paymentRequest) {
+        return chargeCardAsync(customerId, paymentRequest, null);
+    }
+
+    //the idempotency key travels to the card provider so a retried charge is not debited twice
+    public CompletableFuture<Void> chargeCardAsync(UUID customerId, PaymentRequest paymentRequest, String idempotencyKey) {
+        Payment payment = paymentRequest.getPayment();
+        try {
+            validate(customerId, payment);
+        } catch (RuntimeException e) {
+            metrics.failure(currencyOf(payment));
+            throw e;
+        }
+
+        //charge card
+        long start = metrics.start();
+        return chargeAsync(payment, idempotencyKey)
+                .whenComplete((cardPaymentCharge, error) -> metrics.record(Stage.CHARGE, start))
+                .thenAccept(cardPaymentCharge -> recordCharge(customerId, payment, cardPaymentCharge))
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        metrics.success(currencyOf(payment));
+                    } else {
+                        metrics.failure(currencyOf(payment));
+                    }
+                });
+    }
+
+    public List<PaymentChargeResult> chargeCards(List<PaymentRequest> paymentRequests) {
+        //do customers exist, resolved with one query for the whole batch
+        Set<UUID> customerIds = new HashSet<>();
+        for (PaymentRequest paymentRequest : paymentRequests) {
+            if (paymentRequest.getPayment().getCustomerId() != null) {
+                customerIds.add(paymentRequest.getPayment().getCustomerId());
+            }
+        }
+        long lookupStart = metrics.start();
+        Set<UUID> existingCustomerIds = customerIds.isEmpty()
+                ? Set.of()
+                : customerExistenceChecker.selectExisting(customerIds);
+        metrics.record(Stage.CUSTOMER_LOOKUP, lookupStart);
+
+        //and which segments they are in, looked up only when some segment has currencies of its own
+        long currencyStart = metrics.start();
+        Map<UUID, String> segments = currencyPolicy.hasSegments()
+                ? customerSegments.segmentsOf(existingCustomerIds)
+                : Map.of();
+        metrics.record(Stage.CURRENCY_CHECK, currencyStart);
+
+        //reject what we can up front and fan the remaining charges out, at most batchConcurrency at a time
+        Semaphore inFlightCharges = new Semaphore(batchConcurrency);
+        Status[] statuses = new Status[paymentRequests.size()];
+        List<CompletableFuture<Status>> charges = new ArrayList<>(paymentRequests.size());
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            Payment payment = paymentRequests.get(i).getPayment();
+            if (!existingCustomerIds.contains(payment.getCustomerId())) {
+                statuses[i] = Status.CUSTOMER_NOT_FOUND;
+                charges.add(null);
+            } else if (!currencyPolicy.isAccepted(
+                    segments.getOrDefault(payment.getCustomerId(), CurrencyPolicy.DEFAULT_SEGMENT), currencyOf(payment))) {
+                statuses[i] = Status.CURRENCY_NOT_SUPPORTED;
+                charges.add(null);
+            } else {
+                inFlightCharges.acquireUninterruptibly();
+                long start = metrics.start();
+                charges.add(chargeAsync(payment, null)
+                        .handle((charge, error) -> {
+                            metrics.record(Stage.CHARGE, start);
+                            if (error != null) {
+                                return Status.CHARGE_FAILED;
+                            }
+                            return charge.isCardDebited() ? Status.CHARGED : Status.CARD_NOT_DEBITED;
+                        })
+                        .whenComplete((status, error) -> inFlightCharges.release()));
+            }
+        }
+
+        //wait for every charge, keeping the debited payments
+        List<Payment> debitedPayments = new ArrayList<>();
+        for (int i = 0; i < charges.size(); i++) {
+            if (charges.get(i) == null) {
+                continue;
+            }
+            statuses[i] = charges.get(i).join();
+            if (statuses[i] == Status.CHARGED) {
+                debitedPayments.add(paymentRequests.get(i).getPayment());
+            }
+        }
+
+        //insert payments
+        if (!debitedPayments.isEmpty()) {
+            long start = metrics.start();
+            paymentWriter.writeAll(debitedPayments);
+            metrics.record(Stage.SAVE, start);
+        }
+
+        List<PaymentChargeResult> results = new ArrayList<>(paymentRequests.size());
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            Payment payment = paymentRequests.get(i).getPayment();
+            if (statuses[i] == Status.CHARGED) {
+                metrics.success(currencyOf(payment));
+            } else {
+                metrics.failure(currencyOf(payment));
+            }
+            //still null for a charged payment when the writer assigns ids later
+            Long paymentId = statuses[i] == Status.CHARGED ? payment.getPaymentId() : null;
+            results.add(new PaymentChargeResult(i, payment.getCustomerId(), paymentId, statuses[i]));
+        }
+        return results;
+    }
+
+    private void validate(UUID customerId, Payment payment) {
         //does customer exist
-        boolean isCustomerFound = customerRepository.findById(customerId).isPresent();
+        long start = metrics.start();
+        boolean isCustomerFound = customerExistenceChecker.exists(customerId);
+        metrics.record(Stage.CUSTOMER_LOOKUP, start);
         if(!isCustomerFound) {
             throw new IllegalStateException(String.format("Customer with id [%s] not found", customerId));
         }
 
-        //do we support the currency
-        boolean isCurrencySupported = ACCEPTED_CURRENCIES
-                .stream().anyMatch(currency -> currency.equals(paymentRequest.getPayment().getCurrency()));
+        //do we support the currency for the customer's segment
+        start = metrics.start();
+        String segment = currencyPolicy.hasSegments()
+                ? customerSegments.segmentOf(customerId).orElse(CurrencyPolicy.DEFAULT_SEGMENT)
+                : CurrencyPolicy.DEFAULT_SEGMENT;
+        boolean isCurrencySupported = currencyPolicy.isAccepted(segment, currencyOf(payment));
+        metrics.record(Stage.CURRENCY_CHECK, start);
 
         if(!isCurrencySupported) {
-            String message = String.format("Currency [ %s ] not supported", paymentRequest.getPayment().getCurrency());
-            throw new IllegalStateException(message);
+            throw new UnsupportedCurrencyException(currencyOf(payment));
         }
+    }
 
-        //charge card
-        CardPaymentCharge cardPaymentCharge = cardPaymentCharger.chargeCard(
-                paymentRequest.getPayment().getSource(),
-                paymentRequest.getPayment().getAmount(),
-                paymentRequest.getPayment().getCurrency(),
-                paymentRequest.getPayment().getDescription()
-        );
-
+    private void recordCharge(UUID customerId, Payment payment, CardPaymentCharge cardPaymentCharge) {
         //if not debited
         if(!cardPaymentCharge.isCardDebited()) {
             throw new IllegalStateException(String.format("Card not debited for customer [%s]", customerId));
         }
 
         //insert payment
-        paymentRequest.getPayment().setCustomerId(customerId);
-        paymentRepository.save(paymentRequest.getPayment());
+        payment.setCustomerId(customerId);
+        long start = metrics.start();
+        paymentWriter.write(payment);
+        metrics.record(Stage.SAVE, start);
+    }
+
+    //the provider behind any resilience wrapper
+    private static String chargerName(CardPaymentCharger cardPaymentCharger) {
+        CardPaymentCharger charger = cardPaymentCharger instanceof ResilientCardPaymentCharger
+                ? ((ResilientCardPaymentCharger) cardPaymentCharger).getDelegate()
+                : cardPaymentCharger;
+        return ClassUtils.getUserClass(charger).getSimpleName();
+    }
+
+    private static Currency currencyOf(Payment payment) {
+        return payment.getAmount() == null ? null : payment.getAmount().getCurrency();
+    }
+
+    private CompletableFuture<CardPaymentCharge> chargeAsync(Payment payment, String idempotencyKey) {
+        try {
+            if (idempotencyKey == null) {
+                return cardPaymentCharger.chargeCardAsync(
+                        payment.getSource(),
+                        payment.getAmount(),
+                        payment.getDescription()
+                );
+            }
+            return cardPaymentCharger.chargeCardAsync(
+                    payment.getSource(),
+                    payment.getAmount(),
+                    payment.getDescription(),
+                    idempotencyKey
+            );
+        } catch (RuntimeException e) {
+            //a charger failing before it hands back a future is still a failed charge
+            return CompletableFuture.failedFuture(e);
+        }
     }
 }
@@ -0,0 +1,11 @@
+package com.amigoscode.testing.payment;
+
+import java.util.List;
+
+//records payments whose card has been debited
+public interface PaymentWriter {
+
+    void write(Payment payment);
+
+    void writeAll(List<Payment> payments);
+}
@@ -0,0 +1,42 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+//inserts payments straight into the payment table, the payment id is set once write returns
+@Component
+@ConditionalOnProperty(value = "payment.journal.enabled", havingValue = "false", matchIfMissing = true)
+public class RepositoryPaymentWriter implements PaymentWriter {
+
+    private final PaymentRepository paymentRepository;
+    private final CustomerPaymentTotals customerPaymentTotals;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public RepositoryPaymentWriter(PaymentRepository paymentRepository,
+                                   CustomerPaymentTotals customerPaymentTotals,
+                                   PlatformTransactionManager transactionManager) {
+        this.paymentRepository = paymentRepository;
+        this.customerPaymentTotals = customerPaymentTotals;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void write(Payment payment) {
+        writeAll(List.of(payment));
+    }
+
+    @Override
+    public void writeAll(List<Payment> payments) {
+        transactionTemplate.executeWithoutResult(status -> {
+            paymentRepository.saveAll(payments);
+            customerPaymentTotals.add(payments);
+        });
+    }
+}
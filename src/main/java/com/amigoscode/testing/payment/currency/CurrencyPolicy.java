@@ -0,0 +1,169 @@
+package com.amigoscode.testing.payment.currency;
+
+import com.amigoscode.testing.payment.Currency;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+//which currencies are accepted, for the deployment as a whole (the default segment) and per customer segment,
+//configured as payment.currencies.accepted.<segment>=USD,GBP. a segment without its own entry falls back to the default.
+//the application's own configuration is fixed once started, so entries that have to change without a restart go in
+//the properties file at payment.currencies.location, which overrides it and is read again on every reload.
+//each set is kept as a bitmask over currency ordinals, so a check is a single bit test on an immutable snapshot
+@Component
+public class CurrencyPolicy {
+
+    public static final String DEFAULT_SEGMENT = "default";
+    static final String PROPERTY = "payment.currencies.accepted";
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    static {
+        if (CURRENCIES.length > Long.SIZE) {
+            throw new IllegalStateException("Currency masks hold at most " + Long.SIZE + " currencies");
+        }
+    }
+
+    private final Supplier<Map<String, Set<Currency>>> source;
+    private volatile Masks masks;
+
+    private static final Bindable<Map<String, Set<Currency>>> ACCEPTED = Bindable.of(ResolvableType.forClassWithGenerics(
+            Map.class, ResolvableType.forClass(String.class), ResolvableType.forClassWithGenerics(Set.class, Currency.class)));
+
+    @Autowired
+    public CurrencyPolicy(Environment environment,
+                          ResourceLoader resourceLoader,
+                          @Value("${payment.currencies.location:}") String location) {
+        this(() -> {
+            Map<String, Set<Currency>> accepted = new HashMap<>(Binder.get(environment).bind(PROPERTY, ACCEPTED).orElse(Map.of()));
+            if (!location.isEmpty()) {
+                accepted.putAll(read(resourceLoader.getResource(location)));
+            }
+            return accepted;
+        });
+    }
+
+    public CurrencyPolicy(Map<String, Set<Currency>> accepted) {
+        this(() -> accepted);
+    }
+
+    private CurrencyPolicy(Supplier<Map<String, Set<Currency>>> source) {
+        this.source = source;
+        reload();
+    }
+
+    public boolean isAccepted(Currency currency) {
+        return currency != null && (masks.defaultMask & bit(currency)) != 0;
+    }
+
+    public boolean isAccepted(String segment, Currency currency) {
+        return currency != null && (masks.maskOf(segment) & bit(currency)) != 0;
+    }
+
+    //whether any segment other than the default has its own currencies, without which a customer's segment
+    //makes no difference
+    public boolean hasSegments() {
+        return masks.segmentMasks.size() > 1;
+    }
+
+    //whether any segment takes the currency, the only check possible before the customer is known
+    public boolean isAcceptedByAnySegment(Currency currency) {
+        return currency != null && (masks.anySegmentMask & bit(currency)) != 0;
+    }
+
+    public Map<String, Set<Currency>> getAcceptedCurrencies() {
+        Map<String, Set<Currency>> accepted = new TreeMap<>();
+        masks.segmentMasks.forEach((segment, mask) -> accepted.put(segment, toSet(mask)));
+        return accepted;
+    }
+
+    //takes effect for every check that starts after it returns, until the next reload
+    public synchronized void accept(String segment, Set<Currency> currencies) {
+        Map<String, Long> segmentMasks = new HashMap<>(masks.segmentMasks);
+        segmentMasks.put(segment, toMask(currencies));
+        masks = new Masks(segmentMasks);
+    }
+
+    //drops changes made with accept and reads the configuration again, picking up edits to the policy file
+    public synchronized void reload() {
+        Map<String, Long> segmentMasks = new HashMap<>();
+        source.get().forEach((segment, currencies) -> segmentMasks.put(segment, toMask(currencies)));
+        if (!segmentMasks.containsKey(DEFAULT_SEGMENT)) {
+            throw new IllegalStateException(String.format("No currencies configured for [ %s.%s ]", PROPERTY, DEFAULT_SEGMENT));
+        }
+        masks = new Masks(segmentMasks);
+    }
+
+    private static Map<String, Set<Currency>> read(Resource resource) {
+        if (!resource.exists()) {
+            return Map.of();
+        }
+        try {
+            Properties properties = PropertiesLoaderUtils.loadProperties(resource);
+            return new Binder(new MapConfigurationPropertySource(properties)).bind(PROPERTY, ACCEPTED).orElse(Map.of());
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot read accepted currencies from [ %s ]", resource), e);
+        }
+    }
+
+    private static long bit(Currency currency) {
+        return 1L << currency.ordinal();
+    }
+
+    private static long toMask(Set<Currency> currencies) {
+        long mask = 0;
+        for (Currency currency : currencies) {
+            mask |= bit(currency);
+        }
+        return mask;
+    }
+
+    private static Set<Currency> toSet(long mask) {
+        Set<Currency> currencies = EnumSet.noneOf(Currency.class);
+        for (Currency currency : CURRENCIES) {
+            if ((mask & bit(currency)) != 0) {
+                currencies.add(currency);
+            }
+        }
+        return currencies;
+    }
+
+    private static final class Masks {
+        private final Map<String, Long> segmentMasks;
+        private final long defaultMask;
+        private final long anySegmentMask;
+
+        private Masks(Map<String, Long> segmentMasks) {
+            this.segmentMasks = Collections.unmodifiableMap(segmentMasks);
+            this.defaultMask = segmentMasks.get(DEFAULT_SEGMENT);
+            long any = 0;
+            for (long mask : segmentMasks.values()) {
+                any |= mask;
+            }
+            this.anySegmentMask = any;
+        }
+
+        private long maskOf(String segment) {
+            Long mask = segmentMasks.get(segment);
+            return mask == null ? defaultMask : mask;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.amigoscode.testing.payment.currency;
+
+import com.amigoscode.testing.customer.CustomerSegments;
+import com.amigoscode.testing.payment.Currency;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("api/v1/currency-policy")
+public class CurrencyPolicyController {
+
+    private final CurrencyPolicy currencyPolicy;
+    private final CustomerSegments customerSegments;
+
+    @Autowired
+    public CurrencyPolicyController(CurrencyPolicy currencyPolicy, CustomerSegments customerSegments) {
+        this.currencyPolicy = currencyPolicy;
+        this.customerSegments = customerSegments;
+    }
+
+    @GetMapping
+    public Map<String, Set<Currency>> getAcceptedCurrencies() {
+        return currencyPolicy.getAcceptedCurrencies();
+    }
+
+    //names rather than currencies, so a currency no segment accepts yet can still be added
+    @PutMapping("{segment}")
+    public void accept(@PathVariable String segment, @RequestBody List<String> currencies) {
+        Set<Currency> accepted = EnumSet.noneOf(Currency.class);
+        for (String currency : currencies) {
+            try {
+                accepted.add(Currency.valueOf(currency));
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedCurrencyException(currency);
+            }
+        }
+        currencyPolicy.accept(segment, accepted);
+    }
+
+    //the segment whose currencies the customer's payments are checked against from now on
+    @PutMapping(path = "customers/{customerId}", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public void assignSegment(@PathVariable UUID customerId, @RequestBody String segment) {
+        customerSegments.assign(customerId, segment.trim());
+    }
+
+    //reads the configuration again, including the file at payment.currencies.location if one is set
+    @PostMapping("reload")
+    public void reload() {
+        currencyPolicy.reload();
+    }
+}
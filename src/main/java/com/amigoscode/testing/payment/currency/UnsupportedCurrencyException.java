@@ -0,0 +1,13 @@
+package com.amigoscode.testing.payment.currency;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//a currency sent by a client that cannot be taken, answered with a 400 before anything else is done
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnsupportedCurrencyException extends IllegalStateException {
+
+    public UnsupportedCurrencyException(Object currency) {
+        super(String.format("Currency [ %s ] not supported", currency));
+    }
+}
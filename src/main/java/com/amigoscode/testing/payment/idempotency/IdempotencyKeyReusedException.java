@@ -0,0 +1,14 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//a key sent again with a different payment. answering it with the first payment's outcome would report a
+//charge that never happened
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class IdempotencyKeyReusedException extends IllegalStateException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super(String.format("Idempotency key [%s] was already used for a different payment", key));
+    }
+}
@@ -0,0 +1,8 @@
+package com.amigoscode.testing.payment.idempotency;
+
+public enum IdempotencyKeyState {
+    //first time the key is seen, the caller now owns it
+    NEW,
+    IN_FLIGHT,
+    COMPLETED
+}
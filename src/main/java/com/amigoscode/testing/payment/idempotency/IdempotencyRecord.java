@@ -0,0 +1,32 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@ToString
+@Table(name = "payment_idempotency_key")
+public class IdempotencyRecord {
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private IdempotencyKeyState state;
+    //when the key was claimed, or for an in flight key when its current owner took it over
+    @Column(nullable = false)
+    private Instant createdAt;
+    @Column(length = 64)
+    private String fingerprint;
+}
@@ -0,0 +1,46 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotencyRecordRepository extends CrudRepository<IdempotencyRecord, String> {
+
+    //a plain insert so a key claimed by another instance fails on the primary key instead of being merged
+    @Modifying
+    @Transactional
+    @Query(value = "insert into payment_idempotency_key (idempotency_key, state, created_at, fingerprint) " +
+            "values (:key, 'IN_FLIGHT', :created_at, :fingerprint)", nativeQuery = true)
+    void insertInFlight(@Param("key") String key, @Param("fingerprint") String fingerprint, @Param("created_at") Instant createdAt);
+
+    //claims an in flight key whose owner has not finished within its lease, unless someone else just did
+    @Modifying
+    @Transactional
+    @Query("update IdempotencyRecord r set r.createdAt = :now " +
+            "where r.key = :key and r.state = :state and r.createdAt = :claimed_at")
+    int takeOver(@Param("key") String key,
+                 @Param("state") IdempotencyKeyState state,
+                 @Param("claimed_at") Instant claimedAt,
+                 @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update IdempotencyRecord r set r.state = :state where r.key = :key")
+    void updateState(@Param("key") String key, @Param("state") IdempotencyKeyState state);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.key = :key")
+    void deleteKey(@Param("key") String key);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.createdAt < :created_at")
+    int deleteCreatedBefore(@Param("created_at") Instant createdAt);
+}
@@ -0,0 +1,109 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+@Service
+public class IdempotencyService {
+
+    private final IdempotencyStore idempotencyStore;
+    //payments of this instance still running, duplicates of them wait for the same outcome
+    private final ConcurrentMap<String, InFlightPayment> inFlightPayments = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyService(IdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    //identifies what a key was sent with, so a key reused for another payment is told apart from a retry
+    public static String fingerprint(Object... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Object part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    //runs the payment once per key, retries of a completed key succeed without running it again.
+    //the fingerprint has to match the one the key was first used with
+    public CompletableFuture<Void> execute(String key, String fingerprint, Supplier<CompletableFuture<Void>> payment) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        InFlightPayment inFlight = inFlightPayments.putIfAbsent(key, new InFlightPayment(fingerprint, result));
+        if (inFlight != null) {
+            return inFlight.fingerprint.equals(fingerprint)
+                    ? inFlight.result
+                    : CompletableFuture.failedFuture(new IdempotencyKeyReusedException(key));
+        }
+
+        IdempotencyKeyState state;
+        try {
+            state = idempotencyStore.begin(key, fingerprint);
+        } catch (RuntimeException e) {
+            return finish(key, result, e);
+        }
+
+        if (state == IdempotencyKeyState.COMPLETED) {
+            return finish(key, result, null);
+        }
+        if (state == IdempotencyKeyState.IN_FLIGHT) {
+            //claimed by another instance, nothing to wait on from here
+            return finish(key, result, new IllegalStateException(
+                    String.format("Payment with idempotency key [%s] is already in progress", key)));
+        }
+
+        CompletableFuture<Void> execution;
+        try {
+            execution = payment.get();
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+
+        execution.whenComplete((ignored, error) -> {
+            try {
+                if (error == null) {
+                    idempotencyStore.complete(key);
+                } else {
+                    idempotencyStore.release(key);
+                }
+            } finally {
+                finish(key, result, error);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Void> finish(String key, CompletableFuture<Void> result, Throwable error) {
+        inFlightPayments.computeIfPresent(key, (ignored, inFlight) -> inFlight.result == result ? null : inFlight);
+        if (error == null) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(error);
+        }
+        return result;
+    }
+
+    private static final class InFlightPayment {
+        private final String fingerprint;
+        private final CompletableFuture<Void> result;
+
+        private InFlightPayment(String fingerprint, CompletableFuture<Void> result) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.amigoscode.testing.payment.idempotency;
+
+public interface IdempotencyStore {
+
+    //marks the key as in flight unless it is already known, returning the state it was in before.
+    //throws IdempotencyKeyReusedException if the key is known for a payment with another fingerprint
+    IdempotencyKeyState begin(String key, String fingerprint);
+
+    void complete(String key);
+
+    //forgets the key of a payment that failed so the client can try again
+    void release(String key);
+}
@@ -0,0 +1,91 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//keys only live as long as the process, good for a single instance
+@Component
+@ConditionalOnProperty(value = "payment.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public InMemoryIdempotencyStore(@Value("${payment.idempotency.ttl:PT24H}") Duration ttl) {
+        this(ttl, Clock.systemUTC());
+    }
+
+    InMemoryIdempotencyStore(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    @Override
+    public IdempotencyKeyState begin(String key, String fingerprint) {
+        Instant now = clock.instant();
+        Entry entry = new Entry(IdempotencyKeyState.IN_FLIGHT, now, fingerprint);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                return IdempotencyKeyState.NEW;
+            }
+            if (!existing.isExpired(now, ttl)) {
+                if (!existing.fingerprint.equals(fingerprint)) {
+                    throw new IdempotencyKeyReusedException(key);
+                }
+                return existing.state;
+            }
+            //expired but not swept yet, take it over unless another request just did
+            if (entries.replace(key, existing, entry)) {
+                return IdempotencyKeyState.NEW;
+            }
+        }
+    }
+
+    @Override
+    public void complete(String key) {
+        entries.computeIfPresent(key, (k, entry) -> new Entry(IdempotencyKeyState.COMPLETED, entry.createdAt, entry.fingerprint));
+    }
+
+    @Override
+    public void release(String key) {
+        entries.remove(key);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        Instant now = clock.instant();
+        entries.values().removeIf(entry -> entry.isExpired(now, ttl));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final IdempotencyKeyState state;
+        private final Instant createdAt;
+        private final String fingerprint;
+
+        private Entry(IdempotencyKeyState state, Instant createdAt, String fingerprint) {
+            this.state = state;
+            this.createdAt = createdAt;
+            this.fingerprint = fingerprint;
+        }
+
+        private boolean isExpired(Instant now, Duration ttl) {
+            return createdAt.plus(ttl).isBefore(now);
+        }
+    }
+}
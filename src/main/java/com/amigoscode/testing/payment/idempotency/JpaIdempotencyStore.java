@@ -0,0 +1,81 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+//keys shared by every instance through the database, the primary key decides who owns a key
+@Component
+@ConditionalOnProperty(value = "payment.idempotency.store", havingValue = "jpa")
+public class JpaIdempotencyStore implements IdempotencyStore {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final Duration ttl;
+    private final Duration inFlightLease;
+    private final Clock clock;
+
+    @Autowired
+    public JpaIdempotencyStore(IdempotencyRecordRepository idempotencyRecordRepository,
+                               @Value("${payment.idempotency.ttl:PT24H}") Duration ttl,
+                               @Value("${payment.idempotency.in-flight-lease:PT5M}") Duration inFlightLease) {
+        this(idempotencyRecordRepository, ttl, inFlightLease, Clock.systemUTC());
+    }
+
+    JpaIdempotencyStore(IdempotencyRecordRepository idempotencyRecordRepository, Duration ttl, Duration inFlightLease,
+                        Clock clock) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.ttl = ttl;
+        this.inFlightLease = inFlightLease;
+        this.clock = clock;
+    }
+
+    @Override
+    public IdempotencyKeyState begin(String key, String fingerprint) {
+        Instant now = clock.instant();
+        try {
+            idempotencyRecordRepository.insertInFlight(key, fingerprint, now);
+            return IdempotencyKeyState.NEW;
+        } catch (DataIntegrityViolationException e) {
+            //someone else holds the key, unless it was released in the meantime
+            Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findById(key);
+            if (existing.isEmpty()) {
+                return begin(key, fingerprint);
+            }
+            IdempotencyRecord record = existing.get();
+            if (record.getFingerprint() != null && !record.getFingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(key);
+            }
+            if (record.getState() == IdempotencyKeyState.IN_FLIGHT && record.getCreatedAt().plus(inFlightLease).isBefore(now)) {
+                //the instance that claimed it died before finishing. a charge it did make is caught by the
+                //card provider, which gets the same idempotency key
+                return idempotencyRecordRepository.takeOver(key, IdempotencyKeyState.IN_FLIGHT, record.getCreatedAt(), now) == 1
+                        ? IdempotencyKeyState.NEW
+                        : begin(key, fingerprint);
+            }
+            return record.getState();
+        }
+    }
+
+    @Override
+    public void complete(String key) {
+        idempotencyRecordRepository.updateState(key, IdempotencyKeyState.COMPLETED);
+    }
+
+    @Override
+    public void release(String key) {
+        idempotencyRecordRepository.deleteKey(key);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        idempotencyRecordRepository.deleteCreatedBefore(clock.instant().minus(ttl));
+    }
+}
@@ -0,0 +1,114 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.payment.PaymentWriter;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+//a debited payment is appended to the local journal and written to the payment table in the background,
+//so a slow or unavailable database neither delays the charge nor loses it. payment ids are assigned on drain
+@Component
+@ConditionalOnProperty(value = "payment.journal.enabled", havingValue = "true")
+public class JournalingPaymentWriter implements PaymentWriter {
+
+    private static final int CHECKPOINT_ID = 1;
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentJournalCheckpointRepository checkpointRepository;
+    private final CustomerPaymentTotals customerPaymentTotals;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceWrites;
+    private final int batchSize;
+
+    private PaymentJournal journal;
+    //guarded by this, everything before it is in the payment table
+    private long checkpoint;
+
+    @Autowired
+    public JournalingPaymentWriter(PaymentRepository paymentRepository,
+                                   PaymentJournalCheckpointRepository checkpointRepository,
+                                   CustomerPaymentTotals customerPaymentTotals,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${payment.journal.directory:payment-journal}") Path directory,
+                                   @Value("${payment.journal.segment-size:64MB}") DataSize segmentSize,
+                                   @Value("${payment.journal.force-writes:false}") boolean forceWrites,
+                                   @Value("${payment.journal.batch-size:500}") int batchSize) {
+        this.paymentRepository = paymentRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.customerPaymentTotals = customerPaymentTotals;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.directory = directory;
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.forceWrites = forceWrites;
+        this.batchSize = batchSize;
+    }
+
+    //payments journaled before a crash or shutdown are written before any new one is taken
+    @PostConstruct
+    public synchronized void open() {
+        checkpoint = checkpointRepository.findById(CHECKPOINT_ID)
+                .map(PaymentJournalCheckpoint::getPosition)
+                .orElse(0L);
+        journal = new PaymentJournal(directory, segmentSize, forceWrites, checkpoint);
+        drain();
+    }
+
+    @Override
+    public void write(Payment payment) {
+        journal.append(payment);
+    }
+
+    @Override
+    public void writeAll(List<Payment> payments) {
+        payments.forEach(journal::append);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.journal.drain-interval-ms:100}")
+    public synchronized void drain() {
+        List<PaymentJournal.Entry> entries;
+        do {
+            entries = journal.read(checkpoint, batchSize);
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            List<Payment> payments = new ArrayList<>(entries.size());
+            entries.forEach(entry -> payments.add(entry.getPayment()));
+            long next = entries.get(entries.size() - 1).getNext();
+
+            //the checkpoint moves with the insert, so a replay never writes a payment twice
+            transactionTemplate.executeWithoutResult(status -> {
+                paymentRepository.saveAll(payments);
+                customerPaymentTotals.add(payments);
+                checkpointRepository.save(new PaymentJournalCheckpoint(CHECKPOINT_ID, next));
+            });
+            checkpoint = next;
+            journal.deleteBefore(checkpoint);
+        } while (entries.size() == batchSize);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            drain();
+        } finally {
+            journal.close();
+        }
+    }
+}
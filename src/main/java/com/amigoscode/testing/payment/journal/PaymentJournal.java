@@ -0,0 +1,276 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Payment;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//append only log of payments kept in memory mapped segment files named after a growing sequence number.
+//a record is [payload length][crc32c of payload][payload]. the length is written last, and readers only go up to
+//the position published after it, so a reader never sees a half written record
+public class PaymentJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+    //marks a segment left early because the next record did not fit
+    private static final int END_OF_SEGMENT = -1;
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceWrites;
+    private final ConcurrentSkipListMap<Integer, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    //a lock rather than synchronized, so virtual threads appending do not pin their carrier
+    private final Lock writeLock = new ReentrantLock();
+    //held while forcing, never together with writeLock, so appends carry on during a force
+    private final Lock syncLock = new ReentrantLock();
+
+    //guarded by writeLock
+    private boolean closed;
+    private int currentSegment;
+    private MappedByteBuffer current;
+    private int writeOffset;
+    //position just after the last complete record
+    private volatile long writePosition;
+    //position everything before which is on disk, guarded by syncLock
+    private volatile long forcedPosition;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final Payment payment;
+        //where the record after this one starts
+        private final long next;
+    }
+
+    //checkpoint is the position everything before which has been drained, new segments are numbered after it
+    public PaymentJournal(Path directory, int segmentSize, boolean forceWrites, long checkpoint) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceWrites = forceWrites;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(SEGMENT_SUFFIX)) {
+                        int segment = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(segment, map(file, Math.max(Files.size(file), segmentSize)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Cannot open payment journal in [%s]", directory), e);
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(Math.max(segmentOf(checkpoint), 0) + 1);
+        } else {
+            currentSegment = segments.lastKey();
+            current = segments.get(currentSegment);
+            writeOffset = recover(current);
+        }
+        writePosition = position(currentSegment, writeOffset);
+        forcedPosition = writePosition;
+    }
+
+    static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    public long append(Payment payment) {
+        byte[] payload = PaymentJournalCodec.encode(payment);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException(String.format("Payment of %d bytes does not fit a journal segment", recordSize));
+        }
+
+        long position;
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Payment journal is closed");
+            }
+            if (writeOffset + recordSize > current.capacity()) {
+                roll();
+            }
+            int offset = writeOffset;
+            current.putInt(offset + 4, (int) crc.getValue());
+            current.put(offset + HEADER_SIZE, payload);
+            current.putInt(offset, payload.length);
+            writeOffset += recordSize;
+            position = position(currentSegment, writeOffset);
+            writePosition = position;
+        } finally {
+            writeLock.unlock();
+        }
+        if (forceWrites) {
+            sync(position);
+        }
+        return position;
+    }
+
+    //group commit: one force covers every record written by the time it starts, so appends queued behind it
+    //usually find their record already on disk. close forces everything, so an append that finished before it
+    //finds its record forced
+    private void sync(long position) {
+        if (forcedPosition >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (forcedPosition >= position) {
+                return;
+            }
+            long target = writePosition;
+            int segment = segmentOf(target);
+            //segments before the last one were forced whole when the writer moved on from them
+            int from = segmentOf(forcedPosition) == segment ? (int) forcedPosition : 0;
+            segments.get(segment).force(from, (int) target - from);
+            forcedPosition = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    //up to max records starting at from, which is 0 or a position handed out by append or read
+    public List<Entry> read(long from, int max) {
+        long end = writePosition;
+        List<Entry> entries = new ArrayList<>();
+        long position = from;
+        while (entries.size() < max && position < end) {
+            int segment = segmentOf(position);
+            int offset = (int) position;
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = buffer == null || offset + HEADER_SIZE > buffer.capacity()
+                    ? END_OF_SEGMENT
+                    : buffer.getInt(offset);
+            if (length <= 0) {
+                Integer next = segments.higherKey(segment);
+                if (next == null) {
+                    break;
+                }
+                position = position(next, 0);
+                continue;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            position = position(segment, offset + HEADER_SIZE + length);
+            entries.add(new Entry(PaymentJournalCodec.decode(payload), position));
+        }
+        return entries;
+    }
+
+    //drops the segments that lie entirely before position. their mappings are released when the buffers are
+    //collected
+    public void deleteBefore(long position) {
+        int segment = segmentOf(position);
+        for (Integer old : segments.headMap(segment).keySet()) {
+            segments.remove(old);
+            try {
+                Files.deleteIfExists(segmentPath(old));
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Cannot delete payment journal segment [%s]", old), e);
+            }
+        }
+    }
+
+    //appends after close are refused
+    @Override
+    public void close() {
+        writeLock.lock();
+        syncLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current.force();
+            forcedPosition = writePosition;
+            segments.clear();
+        } finally {
+            syncLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    private void roll() {
+        if (writeOffset + 4 <= current.capacity()) {
+            current.putInt(writeOffset, END_OF_SEGMENT);
+        }
+        current.force();
+        openSegment(currentSegment + 1);
+    }
+
+    private void openSegment(int segment) {
+        try {
+            current = map(segmentPath(segment), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Cannot create payment journal segment [%s]", segment), e);
+        }
+        segments.put(segment, current);
+        currentSegment = segment;
+        writeOffset = 0;
+    }
+
+    //finds the end of the last complete record, clearing whatever a crash left behind it
+    private static int recover(MappedByteBuffer buffer) {
+        int offset = 0;
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+
+        if (offset + 4 <= buffer.capacity() && buffer.getInt(offset) != 0) {
+            for (int i = offset; i < buffer.capacity(); i += ZEROS.length) {
+                buffer.put(i, ZEROS, 0, Math.min(ZEROS.length, buffer.capacity() - i));
+            }
+            buffer.force();
+        }
+        return offset;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%010d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.amigoscode.testing.payment.journal;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+//journal position up to which payments are in the payment table
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@ToString
+@Table(name = "payment_journal_checkpoint")
+public class PaymentJournalCheckpoint {
+    @Id
+    private Integer id;
+    @Column(nullable = false)
+    private Long position;
+}
@@ -0,0 +1,8 @@
+package com.amigoscode.testing.payment.journal;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PaymentJournalCheckpointRepository extends CrudRepository<PaymentJournalCheckpoint, Integer> {
+}
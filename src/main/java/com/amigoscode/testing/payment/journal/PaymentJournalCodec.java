@@ -0,0 +1,86 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.amigoscode.testing.payment.Payment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+//binary form of a payment in the journal. the payment id is not kept, it is assigned when the payment reaches the table
+final class PaymentJournalCodec {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final int ABSENT = -1;
+
+    private PaymentJournalCodec() {
+    }
+
+    static byte[] encode(Payment payment) {
+        byte[] source = utf8(payment.getSource());
+        byte[] description = utf8(payment.getDescription());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 16 + 1 + 8 + sizeOf(source) + sizeOf(description));
+        if (payment.getCustomerId() == null) {
+            buffer.put((byte) 0).putLong(0).putLong(0);
+        } else {
+            buffer.put((byte) 1)
+                    .putLong(payment.getCustomerId().getMostSignificantBits())
+                    .putLong(payment.getCustomerId().getLeastSignificantBits());
+        }
+        if (payment.getAmount() == null) {
+            buffer.put((byte) ABSENT).putLong(0);
+        } else {
+            buffer.put((byte) payment.getAmount().getCurrency().ordinal()).putLong(payment.getAmount().getMinorUnits());
+        }
+        putBytes(buffer, source);
+        putBytes(buffer, description);
+        return buffer.array();
+    }
+
+    static Payment decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        boolean hasCustomerId = buffer.get() == 1;
+        long mostSignificantBits = buffer.getLong();
+        long leastSignificantBits = buffer.getLong();
+        byte currency = buffer.get();
+        long minorUnits = buffer.getLong();
+        byte[] source = getBytes(buffer);
+        byte[] description = getBytes(buffer);
+
+        return new Payment(
+                null,
+                hasCustomerId ? new UUID(mostSignificantBits, leastSignificantBits) : null,
+                currency == ABSENT ? null : Money.ofMinor(minorUnits, CURRENCIES[currency]),
+                source == null ? null : new String(source, StandardCharsets.UTF_8),
+                description == null ? null : new String(description, StandardCharsets.UTF_8)
+        );
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(ABSENT);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == ABSENT) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
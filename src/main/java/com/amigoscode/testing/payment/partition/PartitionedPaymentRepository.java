@@ -0,0 +1,238 @@
+package com.amigoscode.testing.payment.partition;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentHistoryEntry;
+import com.amigoscode.testing.payment.PaymentIdBlocks;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotal;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+//PaymentRepository over the payment partitions. a customer's history goes to the one partition that has it,
+//anything not keyed by customer asks every partition in parallel. rows are written with jdbc in a transaction
+//per partition, which commits on its own and not with the caller's transaction on the main database. inside
+//such a transaction they are written just before it commits, after the totals the caller added to are locked
+public class PartitionedPaymentRepository implements PaymentRepository {
+
+    private static final String COLUMNS = "payment_id, customer_id, amount, currency, source, description";
+    private static final String INSERT = "insert into payment (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?)";
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final PaymentPartitions partitions;
+    private final PaymentIdBlocks paymentIds;
+
+    public PartitionedPaymentRepository(PaymentPartitions partitions, PaymentIdBlocks paymentIds) {
+        this.partitions = partitions;
+        this.paymentIds = paymentIds;
+    }
+
+    @Override
+    public <S extends Payment> S save(S payment) {
+        saveAll(List.of(payment));
+        return payment;
+    }
+
+    //payments are only ever inserted, the ones without an id get one first
+    @Override
+    public <S extends Payment> Iterable<S> saveAll(Iterable<S> payments) {
+        Map<Integer, List<Payment>> byPartition = new LinkedHashMap<>();
+        for (Payment payment : payments) {
+            if (payment.getPaymentId() == null) {
+                payment.setPaymentId(paymentIds.next());
+            }
+            UUID customerId = Objects.requireNonNull(payment.getCustomerId(), "customerId");
+            byPartition.computeIfAbsent(partitions.partitionOf(customerId), partition -> new ArrayList<>()).add(payment);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    insert(byPartition);
+                }
+            });
+        } else {
+            insert(byPartition);
+        }
+        return payments;
+    }
+
+    private void insert(Map<Integer, List<Payment>> byPartition) {
+        if (!byPartition.isEmpty()) {
+            partitions.onEach(byPartition.keySet(), partition -> partitions.transactionTemplate(partition).execute(status ->
+                    partitions.jdbcTemplate(partition).batchUpdate(INSERT, byPartition.get(partition), byPartition.get(partition).size(),
+                            (statement, payment) -> {
+                                statement.setLong(1, payment.getPaymentId());
+                                statement.setObject(2, payment.getCustomerId());
+                                statement.setLong(3, payment.getAmount().getMinorUnits());
+                                statement.setInt(4, payment.getAmount().getCurrency().ordinal());
+                                statement.setString(5, payment.getSource());
+                                statement.setString(6, payment.getDescription());
+                            })));
+        }
+    }
+
+    @Override
+    public Optional<Payment> findById(Long paymentId) {
+        return partitions.onEach(partition -> partitions.jdbcTemplate(partition).query(
+                        "select " + COLUMNS + " from payment where payment_id = ?",
+                        PartitionedPaymentRepository::mapPayment, paymentId))
+                .stream()
+                .flatMap(List::stream)
+                .findFirst();
+    }
+
+    @Override
+    public boolean existsById(Long paymentId) {
+        return findById(paymentId).isPresent();
+    }
+
+    @Override
+    public Iterable<Payment> findAll() {
+        return flatten(partitions.onEach(partition -> partitions.jdbcTemplate(partition).query(
+                "select " + COLUMNS + " from payment", PartitionedPaymentRepository::mapPayment)));
+    }
+
+    @Override
+    public Iterable<Payment> findAllById(Iterable<Long> paymentIds) {
+        Object[] ids = toArray(paymentIds);
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        return flatten(partitions.onEach(partition -> partitions.jdbcTemplate(partition).query(
+                "select " + COLUMNS + " from payment where payment_id in (" + placeholders(ids.length) + ")",
+                PartitionedPaymentRepository::mapPayment, ids)));
+    }
+
+    @Override
+    public long count() {
+        return partitions.onEach(partition -> partitions.jdbcTemplate(partition)
+                        .queryForObject("select count(*) from payment", Long.class))
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    @Override
+    public void deleteById(Long paymentId) {
+        partitions.onEach(partition -> partitions.jdbcTemplate(partition)
+                .update("delete from payment where payment_id = ?", paymentId));
+    }
+
+    @Override
+    public void delete(Payment payment) {
+        partitions.jdbcTemplate(partitions.partitionOf(payment.getCustomerId()))
+                .update("delete from payment where payment_id = ?", payment.getPaymentId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> paymentIds) {
+        Object[] ids = toArray(paymentIds);
+        if (ids.length == 0) {
+            return;
+        }
+        partitions.onEach(partition -> partitions.jdbcTemplate(partition)
+                .update("delete from payment where payment_id in (" + placeholders(ids.length) + ")", ids));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Payment> payments) {
+        payments.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        partitions.onEach(partition -> partitions.jdbcTemplate(partition).update("delete from payment"));
+    }
+
+    @Override
+    public List<PaymentHistoryEntry> selectPaymentHistory(UUID customerId, long afterPaymentId, Pageable page) {
+        return partitions.jdbcTemplate(partitions.partitionOf(customerId)).query(
+                "select payment_id, amount, currency, description from payment " +
+                        "where customer_id = ? and payment_id > ? order by payment_id limit ? offset ?",
+                (resultSet, row) -> new PaymentHistoryEntry(
+                        resultSet.getLong("payment_id"),
+                        resultSet.getLong("amount"),
+                        CURRENCIES[resultSet.getInt("currency")],
+                        resultSet.getString("description")),
+                customerId, afterPaymentId, page.getPageSize(), page.getOffset());
+    }
+
+    @Override
+    public List<UUID> selectCustomerIds(UUID afterCustomerId, Pageable page) {
+        //every partition's first page, of which the page wanted is the first ones in order
+        String after = afterCustomerId == null ? "" : "where customer_id > ? ";
+        Object[] args = afterCustomerId == null
+                ? new Object[]{page.getOffset() + page.getPageSize()}
+                : new Object[]{afterCustomerId, page.getOffset() + page.getPageSize()};
+        return partitions.onEach(partition -> partitions.jdbcTemplate(partition).queryForList(
+                        "select distinct customer_id from payment " + after + "order by customer_id limit ?",
+                        UUID.class, args))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(CUSTOMER_ID_ORDER)
+                .skip(page.getOffset())
+                .limit(page.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    //a customer's payments are all in one partition, so the partitions' totals need no merging
+    @Override
+    public List<CustomerPaymentTotal> aggregateCustomerPaymentTotals(Collection<UUID> customerIds) {
+        Map<Integer, List<UUID>> byPartition = new LinkedHashMap<>();
+        for (UUID customerId : customerIds) {
+            byPartition.computeIfAbsent(partitions.partitionOf(customerId), partition -> new ArrayList<>()).add(customerId);
+        }
+        if (byPartition.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return flatten(partitions.onEach(byPartition.keySet(), partition -> partitions.jdbcTemplate(partition).query(
+                "select customer_id, currency, sum(amount), count(*), max(payment_id) from payment " +
+                        "where customer_id in (" + placeholders(byPartition.get(partition).size()) + ") " +
+                        "group by customer_id, currency",
+                (resultSet, row) -> new CustomerPaymentTotal(
+                        resultSet.getObject(1, UUID.class),
+                        CURRENCIES[resultSet.getInt(2)],
+                        resultSet.getLong(3),
+                        resultSet.getLong(4),
+                        resultSet.getLong(5)),
+                byPartition.get(partition).toArray())));
+    }
+
+    private static Payment mapPayment(ResultSet resultSet, int row) throws SQLException {
+        return new Payment(
+                resultSet.getLong("payment_id"),
+                resultSet.getObject("customer_id", UUID.class),
+                Money.ofMinor(resultSet.getLong("amount"), CURRENCIES[resultSet.getInt("currency")]),
+                resultSet.getString("source"),
+                resultSet.getString("description"));
+    }
+
+    private static <T> List<T> flatten(List<List<T>> perPartition) {
+        return perPartition.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private static Object[] toArray(Iterable<? extends Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).toArray();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.amigoscode.testing.payment.partition;
+
+import com.amigoscode.testing.payment.PaymentIdBlocks;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+//with payment.partitions.enabled=true payments are stored in the databases of payment.partitions.urls instead
+//of the main database, which keeps customers, totals, idempotency keys and the payment id sequence.
+//each partition gets its payment table from db/partition when the application starts.
+//the payment journal cannot be used with partitions: its checkpoint is committed on the main database, apart
+//from the partitions' inserts, so a replay after a crash could store a payment and add it to the totals twice
+@Configuration
+@ConditionalOnProperty(value = "payment.partitions.enabled", havingValue = "true")
+public class PaymentPartitionConfig {
+
+    @Bean(destroyMethod = "close")
+    public PaymentPartitions paymentPartitions(@Value("${payment.partitions.urls}") String[] urls,
+                                               @Value("${payment.partitions.username:sa}") String username,
+                                               @Value("${payment.partitions.password:}") String password,
+                                               @Value("${payment.partitions.maximum-pool-size:10}") int maxPoolSize,
+                                               @Value("${payment.journal.enabled:false}") boolean journalEnabled) {
+        if (journalEnabled) {
+            throw new IllegalStateException("payment.partitions.enabled and payment.journal.enabled cannot both be set");
+        }
+        if (urls.length == 0) {
+            throw new IllegalStateException("payment.partitions.urls must name at least one database");
+        }
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(urls[i].trim())
+                    .username(username)
+                    .password(password)
+                    .build();
+            dataSource.setPoolName("payment-partition-" + i);
+            dataSource.setMaximumPoolSize(maxPoolSize);
+            dataSources.add(dataSource);
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .locations("classpath:db/partition")
+                    .load()
+                    .migrate();
+        }
+        return new PaymentPartitions(dataSources);
+    }
+
+    @Bean
+    @Primary
+    public PartitionedPaymentRepository partitionedPaymentRepository(PaymentPartitions paymentPartitions,
+                                                                     JdbcTemplate jdbcTemplate) {
+        return new PartitionedPaymentRepository(paymentPartitions, new PaymentIdBlocks(jdbcTemplate));
+    }
+}
@@ -0,0 +1,105 @@
+package com.amigoscode.testing.payment.partition;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//the payment databases, each behind a pool of its own. all of a customer's payments are in one partition,
+//picked by a hash of the customer id, so the hash and the order of the partitions decide where existing
+//payments are and neither can change without moving them
+public class PaymentPartitions implements AutoCloseable {
+
+    private final List<DataSource> dataSources;
+    private final List<JdbcTemplate> jdbcTemplates = new ArrayList<>();
+    private final List<TransactionTemplate> transactionTemplates = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public PaymentPartitions(List<DataSource> dataSources) {
+        this.dataSources = List.copyOf(dataSources);
+        for (DataSource dataSource : dataSources) {
+            jdbcTemplates.add(new JdbcTemplate(dataSource));
+            transactionTemplates.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+        this.executor = Executors.newFixedThreadPool(dataSources.size(), new CustomizableThreadFactory("payment-partition-"));
+    }
+
+    public int size() {
+        return dataSources.size();
+    }
+
+    public int partitionOf(UUID customerId) {
+        //murmur3 finalizer, random and time ordered ids both spread evenly
+        long hash = customerId.getMostSignificantBits() ^ customerId.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) dataSources.size());
+    }
+
+    public JdbcTemplate jdbcTemplate(int partition) {
+        return jdbcTemplates.get(partition);
+    }
+
+    public TransactionTemplate transactionTemplate(int partition) {
+        return transactionTemplates.get(partition);
+    }
+
+    //runs the task against every partition at once, results in partition order
+    public <T> List<T> onEach(IntFunction<T> task) {
+        return onEach(IntStream.range(0, size()).boxed().collect(Collectors.toList()), task);
+    }
+
+    //runs the task against the given partitions at once, results in the order of the partitions given.
+    //a single partition is queried on the calling thread
+    public <T> List<T> onEach(Collection<Integer> partitions, IntFunction<T> task) {
+        if (partitions.size() == 1) {
+            return List.of(task.apply(partitions.iterator().next()));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(partitions.size());
+        for (int partition : partitions) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(partition), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) dataSource).close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.CardPaymentCharger;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig.SlidingWindowType;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+//with payment.charger.resilience.enabled=true whichever CardPaymentCharger is active is wrapped in a
+//ResilientCardPaymentCharger that takes precedence over it.
+//the breaker and the retry report through micrometer as resilience4j_* meters
+@Configuration
+@ConditionalOnProperty(value = "payment.charger.resilience.enabled", havingValue = "true")
+public class CardPaymentChargerResilienceConfig {
+
+    static final String NAME = "cardCharge";
+
+    //not a bean, a ScheduledExecutorService bean would also take over @Scheduled tasks
+    private final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("card-charge-retry-"));
+
+    @Bean
+    public CircuitBreaker cardChargeCircuitBreaker(
+            MeterRegistry meterRegistry,
+            @Value("${payment.charger.resilience.sliding-window-type:COUNT_BASED}") SlidingWindowType slidingWindowType,
+            @Value("${payment.charger.resilience.sliding-window-size:50}") int slidingWindowSize,
+            @Value("${payment.charger.resilience.minimum-number-of-calls:20}") int minimumNumberOfCalls,
+            @Value("${payment.charger.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${payment.charger.resilience.slow-call-duration-threshold:PT5S}") Duration slowCallDurationThreshold,
+            @Value("${payment.charger.resilience.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+            @Value("${payment.charger.resilience.wait-duration-in-open-state:PT10S}") Duration waitDurationInOpenState,
+            @Value("${payment.charger.resilience.permitted-calls-in-half-open-state:3}") int permittedCallsInHalfOpenState) {
+        //while open, charges fail at once. after waitDurationInOpenState a few probe charges decide
+        //whether to close again or to stay open for another wait
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .slidingWindow(slidingWindowSize, minimumNumberOfCalls, slidingWindowType)
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDurationThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .ignoreException(ChargeFailures::isCallerError)
+                .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry.circuitBreaker(NAME);
+    }
+
+    @Bean
+    public Retry cardChargeRetry(
+            MeterRegistry meterRegistry,
+            @Value("${payment.charger.resilience.retry.max-attempts:3}") int maxAttempts,
+            @Value("${payment.charger.resilience.retry.initial-interval:PT0.2S}") Duration initialInterval,
+            @Value("${payment.charger.resilience.retry.multiplier:2}") double multiplier,
+            @Value("${payment.charger.resilience.retry.randomization-factor:0.5}") double randomizationFactor,
+            @Value("${payment.charger.resilience.retry.max-interval:PT2S}") Duration maxInterval) {
+        //jittered so callers that failed together do not retry together
+        RetryConfig config = RetryConfig.custom()
+                .maxAttempts(maxAttempts)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(
+                        initialInterval, multiplier, randomizationFactor, maxInterval))
+                .retryOnException(ChargeFailures::isRetryable)
+                .build();
+        RetryRegistry registry = RetryRegistry.of(config);
+        TaggedRetryMetrics.ofRetryRegistry(registry).bindTo(meterRegistry);
+        return registry.retry(NAME);
+    }
+
+    //the charger that PaymentService gets, the plain one is still created and shut down as before
+    @Bean
+    @Primary
+    public ResilientCardPaymentCharger resilientCardPaymentCharger(List<CardPaymentCharger> chargers,
+                                                                   CircuitBreaker cardChargeCircuitBreaker,
+                                                                   Retry cardChargeRetry) {
+        if (chargers.size() != 1) {
+            throw new IllegalStateException(String.format("Expected one card payment charger to wrap but found %s", chargers));
+        }
+        return new ResilientCardPaymentCharger(chargers.get(0), cardChargeCircuitBreaker, cardChargeRetry, retryScheduler);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdown();
+    }
+}
@@ -0,0 +1,50 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.stripe.StripeBulkheadRejectedException;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+
+//sorts a failed charge by the stripe exception somewhere in its causes,
+//chargers wrap it in an IllegalStateException and futures in a CompletionException
+final class ChargeFailures {
+
+    private ChargeFailures() {
+    }
+
+    //the provider could not be reached, was overloaded or failed on its side, so the same charge may succeed later.
+    //calls our own bulkhead shed are not sent again, they still count against the breaker
+    static boolean isRetryable(Throwable failure) {
+        StripeException stripeException = stripeExceptionOf(failure);
+        if (stripeException instanceof StripeBulkheadRejectedException) {
+            return false;
+        }
+        if (stripeException instanceof ApiConnectionException || stripeException instanceof RateLimitException) {
+            return true;
+        }
+        if (stripeException instanceof ApiException) {
+            Integer statusCode = stripeException.getStatusCode();
+            return statusCode == null || statusCode >= 500;
+        }
+        return false;
+    }
+
+    //declined cards and bad requests say nothing about the provider's health
+    static boolean isCallerError(Throwable failure) {
+        StripeException stripeException = stripeExceptionOf(failure);
+        return stripeException instanceof CardException
+                || (stripeException instanceof InvalidRequestException && !(stripeException instanceof RateLimitException));
+    }
+
+    private static StripeException stripeExceptionOf(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StripeException) {
+                return (StripeException) cause;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.CardPaymentCharger;
+import com.amigoscode.testing.payment.Money;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+//wraps any charger in a retry around a circuit breaker. every attempt passes the breaker, so failures count
+//towards opening it, and once it is open the next attempt fails straight away instead of retrying into an outage.
+//attempts of one charge share an idempotency key, generated when the caller has none, so a retry never debits twice
+public class ResilientCardPaymentCharger implements CardPaymentCharger {
+
+    private final CardPaymentCharger delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Retry retry;
+    private final ScheduledExecutorService retryScheduler;
+
+    public ResilientCardPaymentCharger(CardPaymentCharger delegate,
+                                       CircuitBreaker circuitBreaker,
+                                       Retry retry,
+                                       ScheduledExecutorService retryScheduler) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.retry = retry;
+        this.retryScheduler = retryScheduler;
+    }
+
+    public CardPaymentCharger getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String source, Money amount, String description) {
+        return chargeCard(source, amount, description, null);
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String source, Money amount, String description, String idempotencyKey) {
+        String key = keyOf(idempotencyKey);
+        Supplier<CardPaymentCharge> attempt = CircuitBreaker.decorateSupplier(circuitBreaker,
+                () -> delegate.chargeCard(source, amount, description, key));
+        try {
+            return Retry.decorateSupplier(retry, attempt).get();
+        } catch (CallNotPermittedException e) {
+            throw unavailable(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description) {
+        return chargeCardAsync(source, amount, description, null);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description,
+                                                                String idempotencyKey) {
+        String key = keyOf(idempotencyKey);
+        Supplier<CompletionStage<CardPaymentCharge>> attempt = CircuitBreaker.decorateCompletionStage(circuitBreaker,
+                () -> delegate.chargeCardAsync(source, amount, description, key));
+
+        CompletableFuture<CardPaymentCharge> charge = new CompletableFuture<>();
+        Retry.decorateCompletionStage(retry, retryScheduler, attempt).get()
+                .whenComplete((cardPaymentCharge, error) -> {
+                    if (error == null) {
+                        charge.complete(cardPaymentCharge);
+                    } else {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause()
+                                : error;
+                        charge.completeExceptionally(cause instanceof CallNotPermittedException
+                                ? unavailable((CallNotPermittedException) cause)
+                                : cause);
+                    }
+                });
+        return charge;
+    }
+
+    private static String keyOf(String idempotencyKey) {
+        return idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+    }
+
+    private static IllegalStateException unavailable(CallNotPermittedException e) {
+        return new IllegalStateException("Cannot make card charge, provider circuit is open", e);
+    }
+}
@@ -2,18 +2,23 @@ package com.amigoscode.testing.payment.stripe;
 
 import com.amigoscode.testing.payment.CardPaymentCharge;
 import com.amigoscode.testing.payment.CardPaymentCharger;
-import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @ConditionalOnProperty(value = "stripe.enabled", havingValue = "false")
 public class MockStripeService implements CardPaymentCharger {
 
     @Override
-    public CardPaymentCharge chargeCard(String source, BigDecimal amount, Currency currency, String description) {
+    public CardPaymentCharge chargeCard(String source, Money amount, String description) {
         return new CardPaymentCharge(true);
     }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description) {
+        return CompletableFuture.completedFuture(new CardPaymentCharge(true));
+    }
 }
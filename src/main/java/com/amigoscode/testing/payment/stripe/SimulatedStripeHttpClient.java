@@ -0,0 +1,72 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//stands in for stripe's servers in load tests with stripe.simulator.enabled=true. StripeHttpClient hands it the
+//requests it would send, after its bulkhead and with its metrics, and it answers with the responses stripe would
+//give after the drawn latency, so everything from StripeService down runs as it does against stripe
+@Component
+@ConditionalOnProperty(value = "stripe.simulator.enabled", havingValue = "true")
+public class SimulatedStripeHttpClient extends HttpClient {
+
+    private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of());
+    private static final String DECLINED = "{\"error\":{\"type\":\"card_error\",\"code\":\"card_declined\"," +
+            "\"decline_code\":\"generic_decline\",\"message\":\"Your card was declined.\"}}";
+    private static final String RATE_LIMITED = "{\"error\":{\"type\":\"invalid_request_error\",\"code\":\"rate_limit\"," +
+            "\"message\":\"Too many requests made to the API too quickly\"}}";
+
+    private final StripeSimulation simulation;
+    private final AtomicLong charges = new AtomicLong();
+
+    @Autowired
+    public SimulatedStripeHttpClient(@Value("${stripe.simulator.seed:42}") long seed,
+                                     @Value("${stripe.simulator.latency-p50:PT0.3S}") Duration latencyP50,
+                                     @Value("${stripe.simulator.latency-p99:PT1.5S}") Duration latencyP99,
+                                     @Value("${stripe.simulator.decline-rate:0.02}") double declineRate,
+                                     @Value("${stripe.simulator.rate-limit-rate:0.01}") double rateLimitRate,
+                                     @Value("${stripe.simulator.timeout-rate:0.005}") double timeoutRate,
+                                     @Value("${stripe.http.read-timeout:PT30S}") Duration timeout) {
+        this(new StripeSimulation(seed, latencyP50, latencyP99, declineRate, rateLimitRate, timeoutRate, timeout));
+    }
+
+    SimulatedStripeHttpClient(StripeSimulation simulation) {
+        this.simulation = simulation;
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws ApiConnectionException {
+        StripeSimulation.Outcome outcome = simulation.next();
+        try {
+            TimeUnit.NANOSECONDS.sleep(outcome.getLatencyNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted during API request to Stripe", e);
+        }
+
+        switch (outcome.getKind()) {
+            case DECLINED:
+                return new StripeResponse(402, NO_HEADERS, DECLINED);
+            case RATE_LIMITED:
+                return new StripeResponse(429, NO_HEADERS, RATE_LIMITED);
+            case TIMED_OUT:
+                throw new ApiConnectionException(String.format(
+                        "IOException during API request to Stripe (%s): Read timed out", request.url()));
+            default:
+                return new StripeResponse(200, NO_HEADERS,
+                        String.format("{\"id\":\"ch_simulated_%d\",\"object\":\"charge\",\"paid\":true}", charges.incrementAndGet()));
+        }
+    }
+}
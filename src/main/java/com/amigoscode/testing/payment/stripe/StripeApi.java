@@ -2,14 +2,33 @@ package com.amigoscode.testing.payment.stripe;
 
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
 import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeResponseGetter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
 
+//same request Charge.create makes, sent through our own client instead of the sdk's global one
 @Service
+@ConditionalOnProperty(value = "stripe.enabled", havingValue = "true")
 public class StripeApi {
+
+    private final StripeResponseGetter responseGetter;
+    private final String chargesUrl;
+
+    @Autowired
+    public StripeApi(StripeHttpClient stripeHttpClient,
+                     @Value("${stripe.api-base:https://api.stripe.com}") String apiBase) {
+        this.responseGetter = new LiveStripeResponseGetter(stripeHttpClient);
+        this.chargesUrl = apiBase + "/v1/charges";
+    }
+
     public Charge create(Map<String, Object> requestMap, RequestOptions options) throws StripeException {
-        return Charge.create(requestMap, options);
+        return responseGetter.request(ApiResource.RequestMethod.POST, chargesUrl, requestMap, Charge.class, options);
     }
 }
@@ -0,0 +1,12 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+
+//a call StripeHttpClient shed without sending it. still a connection error to stripe's client, but sending it
+//again straight away only adds to the load that got it shed
+public class StripeBulkheadRejectedException extends ApiConnectionException {
+
+    public StripeBulkheadRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,179 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//the network client under StripeApi. one shared java.net.http client keeps connections to stripe alive between
+//charges, and a bulkhead lets at most maxConcurrentRequests through at a time with at most maxQueuedRequests
+//waiting up to maxQueueWait behind them. anything beyond that fails at once with StripeBulkheadRejectedException,
+//so a slow provider shows up as rejected charges rather than as threads piling up behind it. with a simulator the
+//requests go to it instead of over the network
+@Component
+@ConditionalOnProperty(value = "stripe.enabled", havingValue = "true")
+public class StripeHttpClient extends HttpClient {
+
+    private final java.net.http.HttpClient httpClient;
+    private final HttpClient simulator;
+    private final Duration readTimeout;
+    private final int maxConcurrentRequests;
+    private final int maxQueuedRequests;
+    private final long maxQueueWaitNanos;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Timer requestTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejections;
+
+    @Autowired
+    public StripeHttpClient(MeterRegistry meterRegistry,
+                            @Value("${stripe.http.connect-timeout:PT5S}") Duration connectTimeout,
+                            @Value("${stripe.http.read-timeout:PT30S}") Duration readTimeout,
+                            @Value("${stripe.http.max-concurrent-requests:50}") int maxConcurrentRequests,
+                            @Value("${stripe.http.max-queued-requests:100}") int maxQueuedRequests,
+                            @Value("${stripe.http.max-queue-wait:PT1S}") Duration maxQueueWait,
+                            @Nullable SimulatedStripeHttpClient simulator) {
+        //http/1.1 so the pool holds one keep-alive connection per request in flight, which the bulkhead bounds
+        this.httpClient = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.simulator = simulator;
+        this.readTimeout = readTimeout;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+
+        this.requestTimer = Timer.builder("stripe.http.requests")
+                .description("Calls to the stripe api, including the wait for a free connection")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("stripe.http.queue.wait")
+                .description("Time a call to stripe waited for the bulkhead")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejections = Counter.builder("stripe.http.rejected")
+                .description("Calls to stripe refused because the bulkhead and its queue were full")
+                .register(meterRegistry);
+        Gauge.builder("stripe.http.active", this, StripeHttpClient::active)
+                .description("Calls to stripe in flight")
+                .register(meterRegistry);
+        Gauge.builder("stripe.http.queued", queued, AtomicInteger::get)
+                .description("Calls to stripe waiting for the bulkhead")
+                .register(meterRegistry);
+        Gauge.builder("stripe.http.saturation", this, client -> (double) client.active() / client.maxConcurrentRequests)
+                .description("Share of the stripe connection pool in use")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        long start = System.nanoTime();
+        acquire();
+        try {
+            if (simulator != null) {
+                return simulator.request(request);
+            }
+            HttpResponse<String> response = httpClient.send(toHttpRequest(request), HttpResponse.BodyHandlers.ofString());
+            return new StripeResponse(response.statusCode(), HttpHeaders.of(response.headers().map()), response.body());
+        } catch (IOException e) {
+            throw new ApiConnectionException(
+                    String.format("IOException during API request to Stripe (%s): %s", request.url(), e.getMessage()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted during API request to Stripe", e);
+        } finally {
+            permits.release();
+            requestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void acquire() throws ApiConnectionException {
+        if (permits.tryAcquire()) {
+            queueWaitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        if (queued.incrementAndGet() > maxQueuedRequests) {
+            queued.decrementAndGet();
+            rejections.increment();
+            throw new StripeBulkheadRejectedException(String.format(
+                    "Stripe bulkhead full, %d calls in flight and %d queued", maxConcurrentRequests, maxQueuedRequests));
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxQueueWaitNanos, TimeUnit.NANOSECONDS)) {
+                rejections.increment();
+                throw new StripeBulkheadRejectedException(String.format(
+                        "No stripe connection free within %d ms", TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for a stripe connection", e);
+        } finally {
+            queued.decrementAndGet();
+            queueWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private HttpRequest toHttpRequest(StripeRequest request) throws ApiConnectionException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.url().toURI());
+        } catch (URISyntaxException e) {
+            throw new ApiConnectionException(String.format("Invalid stripe url [%s]", request.url()), e);
+        }
+        builder.timeout(readTimeout);
+
+        builder.header("User-Agent", buildUserAgentString());
+        builder.header("X-Stripe-Client-User-Agent", buildXStripeClientUserAgentString());
+        for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+            builder.header(header.getKey(), String.join(",", header.getValue()));
+        }
+
+        if (request.content() == null) {
+            builder.method(request.method().name(), HttpRequest.BodyPublishers.noBody());
+        } else {
+            builder.header("Content-Type", request.content().contentType());
+            builder.method(request.method().name(),
+                    HttpRequest.BodyPublishers.ofByteArray(request.content().byteArrayContent()));
+        }
+        return builder.build();
+    }
+
+    private int active() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClient.close();
+    }
+}
@@ -2,27 +2,46 @@ package com.amigoscode.testing.payment.stripe;
 
 import com.amigoscode.testing.payment.CardPaymentCharge;
 import com.amigoscode.testing.payment.CardPaymentCharger;
-import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.net.RequestOptions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import javax.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @ConditionalOnProperty(value = "stripe.enabled", havingValue = "true")
 public class StripeService implements CardPaymentCharger {
 
     private final StripeApi stripeApi;
+    //the stripe sdk only offers blocking calls, so async charges wait for the provider on these threads.
+    //how many of them reach stripe at once is capped by the bulkhead in StripeHttpClient, and a pool has a thread
+    //for every call the bulkhead lets in or queues, so a charge it would shed is not held back here instead
+    private final ExecutorService chargeExecutor;
 
     @Autowired
-    public StripeService(StripeApi stripeApi) {
+    public StripeService(StripeApi stripeApi,
+                         @Value("${stripe.http.max-concurrent-requests:50}") int maxConcurrentRequests,
+                         @Value("${stripe.http.max-queued-requests:100}") int maxQueuedRequests,
+                         @Value("${threads.virtual.enabled:false}") boolean virtualThreads) {
+        this(stripeApi, maxConcurrentRequests + maxQueuedRequests, virtualThreads);
+    }
+
+    StripeService(StripeApi stripeApi, int maxConcurrentCharges, boolean virtualThreads) {
         this.stripeApi = stripeApi;
+        this.chargeExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stripe-charge-", 1).factory())
+                : Executors.newFixedThreadPool(maxConcurrentCharges, new CustomizableThreadFactory("stripe-charge-"));
     }
 
     private final static RequestOptions requestOptions = RequestOptions.builder()
@@ -30,18 +49,59 @@ public class StripeService implements CardPaymentCharger {
             .build();
 
     @Override
-    public CardPaymentCharge chargeCard(String source, BigDecimal amount, Currency currency, String description) {
+    public CardPaymentCharge chargeCard(String source, Money amount, String description) {
+        return charge(source, amount, description, requestOptions);
+    }
+
+    //stripe replays the original outcome for a repeated idempotency key instead of charging twice
+    @Override
+    public CardPaymentCharge chargeCard(String source, Money amount, String description, String idempotencyKey) {
+        return charge(source, amount, description, options(idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description) {
+        return chargeAsync(source, amount, description, requestOptions);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String source, Money amount, String description,
+                                                                String idempotencyKey) {
+        return chargeAsync(source, amount, description, options(idempotencyKey));
+    }
+
+    private static RequestOptions options(String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return requestOptions;
+        }
+        return requestOptions.toBuilder()
+                .setIdempotencyKey(idempotencyKey)
+                .build();
+    }
+
+    private CardPaymentCharge charge(String source, Money amount, String description, RequestOptions options) {
+        //stripe takes the amount as an integer number of minor units
         Map<String, Object> params = new HashMap<>();
-        params.put("amount", amount);
-        params.put("currency", currency);
+        params.put("amount", amount.getMinorUnits());
+        params.put("currency", amount.getCurrency());
         params.put("source", source);
         params.put("description", description);
 
         try {
-           Charge charge = stripeApi.create(params, requestOptions);
+           Charge charge = stripeApi.create(params, options);
             return new CardPaymentCharge(charge.getPaid());
         } catch (StripeException e) {
             throw new IllegalStateException("Cannot make stripe charge", e);
         }
     }
+
+    private CompletableFuture<CardPaymentCharge> chargeAsync(String source, Money amount, String description,
+                                                             RequestOptions options) {
+        return CompletableFuture.supplyAsync(() -> charge(source, amount, description, options), chargeExecutor);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        chargeExecutor.shutdown();
+    }
 }
@@ -0,0 +1,79 @@
+package com.amigoscode.testing.payment.stripe;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Random;
+
+//draws what stripe does with each charge. latency is log-normal, fitted so its median and 99th percentile
+//match the configured p50 and p99, and anything slower than the timeout is a timeout. every charge takes the
+//same number of draws from one seeded generator, so the same seed and call order give the same run
+class StripeSimulation {
+
+    enum Kind {
+        PAID,
+        DECLINED,
+        RATE_LIMITED,
+        TIMED_OUT
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Outcome {
+        private final Kind kind;
+        private final long latencyNanos;
+    }
+
+    //the standard normal's 99th percentile
+    private static final double Z_99 = 2.3263478740408408;
+
+    private final Random random;
+    private final double mu;
+    private final double sigma;
+    private final double declineRate;
+    private final double rateLimitRate;
+    private final double timeoutRate;
+    private final long timeoutNanos;
+
+    StripeSimulation(long seed,
+                     Duration latencyP50,
+                     Duration latencyP99,
+                     double declineRate,
+                     double rateLimitRate,
+                     double timeoutRate,
+                     Duration timeout) {
+        if (latencyP50.isNegative() || latencyP50.isZero() || latencyP99.compareTo(latencyP50) < 0) {
+            throw new IllegalStateException(String.format(
+                    "Simulated latency needs 0 < p50 <= p99, got p50 [%s] and p99 [%s]", latencyP50, latencyP99));
+        }
+        if (declineRate + rateLimitRate + timeoutRate > 1) {
+            throw new IllegalStateException("Simulated decline, rate limit and timeout rates add up to more than 1");
+        }
+        this.random = new Random(seed);
+        this.mu = Math.log(latencyP50.toNanos());
+        this.sigma = Math.log((double) latencyP99.toNanos() / latencyP50.toNanos()) / Z_99;
+        this.declineRate = declineRate;
+        this.rateLimitRate = rateLimitRate;
+        this.timeoutRate = timeoutRate;
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    synchronized Outcome next() {
+        double roll = random.nextDouble();
+        long latencyNanos = (long) Math.exp(mu + sigma * random.nextGaussian());
+
+        if (roll < timeoutRate || latencyNanos >= timeoutNanos) {
+            return new Outcome(Kind.TIMED_OUT, timeoutNanos);
+        }
+        roll -= timeoutRate;
+        if (roll < rateLimitRate) {
+            return new Outcome(Kind.RATE_LIMITED, latencyNanos);
+        }
+        roll -= rateLimitRate;
+        if (roll < declineRate) {
+            return new Outcome(Kind.DECLINED, latencyNanos);
+        }
+        return new Outcome(Kind.PAID, latencyNanos);
+    }
+}
@@ -0,0 +1,45 @@
+package com.amigoscode.testing.payment.totals;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+//running totals of one customer's payments in one currency
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@ToString
+@Table(name = "customer_payment_total")
+public class CustomerPaymentTotal {
+    @EmbeddedId
+    @JsonUnwrapped
+    private CustomerPaymentTotalId id;
+    //in minor units of the currency
+    @Column(name = "total_amount", nullable = false)
+    @JsonIgnore
+    private Long totalMinorUnits;
+    @Column(nullable = false)
+    private Long paymentCount;
+    private Long lastPaymentId;
+
+    public CustomerPaymentTotal(UUID customerId, Currency currency, Long totalMinorUnits, Long paymentCount, Long lastPaymentId) {
+        this(new CustomerPaymentTotalId(customerId, currency), totalMinorUnits, paymentCount, lastPaymentId);
+    }
+
+    @JsonProperty("totalAmount")
+    public BigDecimal getTotalAmount() {
+        return Money.ofMinor(totalMinorUnits, id.getCurrency()).toBigDecimal();
+    }
+}
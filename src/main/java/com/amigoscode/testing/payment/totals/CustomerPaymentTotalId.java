@@ -0,0 +1,26 @@
+package com.amigoscode.testing.payment.totals;
+
+import com.amigoscode.testing.payment.Currency;
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.io.Serializable;
+import java.util.UUID;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Embeddable
+@ToString
+@EqualsAndHashCode
+public class CustomerPaymentTotalId implements Serializable {
+    @Column(columnDefinition = "uuid")
+    private UUID customerId;
+    @Enumerated(EnumType.ORDINAL)
+    @Column(columnDefinition = "smallint")
+    private Currency currency;
+}
@@ -0,0 +1,30 @@
+package com.amigoscode.testing.payment.totals;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface CustomerPaymentTotalRepository extends CrudRepository<CustomerPaymentTotal, CustomerPaymentTotalId> {
+
+    List<CustomerPaymentTotal> findByIdCustomerId(UUID customerId);
+
+    //same order and paging as PaymentRepository.selectCustomerIds
+    @Query("select distinct t.id.customerId from CustomerPaymentTotal t " +
+            "where :afterCustomerId is null or t.id.customerId > :afterCustomerId " +
+            "order by t.id.customerId")
+    List<UUID> selectCustomerIds(@Param("afterCustomerId") UUID afterCustomerId, Pageable page);
+
+    //select for update, holds back payments being added to these totals until the caller's transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from CustomerPaymentTotal t where t.id.customerId in :customerIds")
+    List<CustomerPaymentTotal> lockByCustomerIds(@Param("customerIds") Collection<UUID> customerIds);
+}
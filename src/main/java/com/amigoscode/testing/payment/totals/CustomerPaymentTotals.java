@@ -0,0 +1,193 @@
+package com.amigoscode.testing.payment.totals;
+
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+//per customer and currency totals kept up to date as payments are written, so reading them never scans payments
+@Service
+public class CustomerPaymentTotals {
+
+    //adds to the customer's total in one statement, creating it for their first payment in the currency
+    private static final String ADD_PAYMENTS = "merge into customer_payment_total t " +
+            "using (select cast(? as uuid) customer_id, cast(? as smallint) currency, cast(? as bigint) amount, " +
+            "cast(? as bigint) payment_count, cast(? as bigint) last_payment_id) d " +
+            "on t.customer_id = d.customer_id and t.currency = d.currency " +
+            "when matched then update set " +
+            "total_amount = t.total_amount + d.amount, " +
+            "payment_count = t.payment_count + d.payment_count, " +
+            "last_payment_id = case when t.last_payment_id is null or t.last_payment_id < d.last_payment_id " +
+            "then d.last_payment_id else t.last_payment_id end " +
+            "when not matched then insert (customer_id, currency, total_amount, payment_count, last_payment_id) " +
+            "values (d.customer_id, d.currency, d.amount, d.payment_count, d.last_payment_id)";
+    //fails rather than overwrites a total a concurrent first payment created
+    private static final String INSERT_TOTAL = "insert into customer_payment_total " +
+            "(customer_id, currency, total_amount, payment_count, last_payment_id) values (?, ?, ?, ?, ?)";
+    private static final int REBUILD_CHUNK_SIZE = 500;
+    //each retry follows a concurrent first payment, more than a couple in a row means something else is wrong
+    private static final int MAX_ATTEMPTS = 3;
+    //databases where a failed statement leaves the rest of its transaction usable. on others, postgres among
+    //them, the transaction is aborted and running the merge again in it cannot succeed
+    private static final Set<DatabaseDriver> STATEMENT_LEVEL_ROLLBACK = EnumSet.of(
+            DatabaseDriver.H2, DatabaseDriver.HSQLDB, DatabaseDriver.MYSQL, DatabaseDriver.MARIADB, DatabaseDriver.ORACLE);
+
+    private final CustomerPaymentTotalRepository customerPaymentTotalRepository;
+    private final PaymentRepository paymentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean retriesMergeInTransaction;
+
+    @Autowired
+    public CustomerPaymentTotals(CustomerPaymentTotalRepository customerPaymentTotalRepository,
+                                 PaymentRepository paymentRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager) {
+        this.customerPaymentTotalRepository = customerPaymentTotalRepository;
+        this.paymentRepository = paymentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retriesMergeInTransaction = STATEMENT_LEVEL_ROLLBACK.contains(jdbcTemplate.execute(
+                (ConnectionCallback<DatabaseDriver>) connection ->
+                        DatabaseDriver.fromProductName(connection.getMetaData().getDatabaseProductName())));
+    }
+
+    public List<CustomerPaymentTotal> selectCustomerPaymentTotals(UUID customerId) {
+        return customerPaymentTotalRepository.findByIdCustomerId(customerId);
+    }
+
+    //called in the transaction that inserts the payments, after their ids are assigned. everything happens on
+    //that transaction's connection, so writing payments never needs a second one from the pool
+    public void add(List<Payment> payments) {
+        Map<CustomerPaymentTotalId, CustomerPaymentTotal> deltas = new LinkedHashMap<>();
+        for (Payment payment : payments) {
+            deltas.merge(
+                    new CustomerPaymentTotalId(payment.getCustomerId(), payment.getAmount().getCurrency()),
+                    new CustomerPaymentTotal(payment.getCustomerId(), payment.getAmount().getCurrency(),
+                            payment.getAmount().getMinorUnits(), 1L, payment.getPaymentId()),
+                    CustomerPaymentTotals::combine);
+        }
+
+        for (CustomerPaymentTotal delta : deltas.values()) {
+            addPayments(delta);
+        }
+    }
+
+    //recomputes every total from the payments, for a new deployment or after totals drifted. customers are
+    //rebuilt a chunk at a time, so neither the totals nor the locks on them are all held at once
+    @Scheduled(cron = "${payment.totals.rebuild-cron:-}")
+    public void rebuild() {
+        UUID afterCustomerId = null;
+        List<UUID> customerIds;
+        do {
+            customerIds = nextCustomerIds(afterCustomerId);
+            if (!customerIds.isEmpty()) {
+                rebuild(customerIds);
+                afterCustomerId = customerIds.get(customerIds.size() - 1);
+            }
+        } while (customerIds.size() == REBUILD_CHUNK_SIZE);
+    }
+
+    //the next customers with payments or totals, totals without payments have to go
+    private List<UUID> nextCustomerIds(UUID afterCustomerId) {
+        Pageable page = PageRequest.of(0, REBUILD_CHUNK_SIZE);
+        Set<UUID> customerIds = new TreeSet<>(PaymentRepository.CUSTOMER_ID_ORDER);
+        customerIds.addAll(paymentRepository.selectCustomerIds(afterCustomerId, page));
+        customerIds.addAll(customerPaymentTotalRepository.selectCustomerIds(afterCustomerId, page));
+        return customerIds.stream().limit(REBUILD_CHUNK_SIZE).collect(Collectors.toList());
+    }
+
+    //the totals are locked before the payments are read. a payment written meanwhile is either read, its
+    //transaction having added to the total before the lock was taken, or added to the rebuilt total afterwards
+    private void rebuild(List<UUID> customerIds) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    Map<CustomerPaymentTotalId, CustomerPaymentTotal> stale = new HashMap<>();
+                    customerPaymentTotalRepository.lockByCustomerIds(customerIds)
+                            .forEach(total -> stale.put(total.getId(), total));
+                    for (CustomerPaymentTotal total : paymentRepository.aggregateCustomerPaymentTotals(customerIds)) {
+                        CustomerPaymentTotal current = stale.remove(total.getId());
+                        if (current == null) {
+                            insert(total);
+                        } else {
+                            current.setTotalMinorUnits(total.getTotalMinorUnits());
+                            current.setPaymentCount(total.getPaymentCount());
+                            current.setLastPaymentId(total.getLastPaymentId());
+                        }
+                    }
+                    customerPaymentTotalRepository.deleteAll(stale.values());
+                });
+                return;
+            } catch (DataIntegrityViolationException e) {
+                //a first payment created one of the totals after the lock was taken, it is locked next time
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void insert(CustomerPaymentTotal total) {
+        jdbcTemplate.update(INSERT_TOTAL,
+                total.getId().getCustomerId(),
+                total.getId().getCurrency().ordinal(),
+                total.getTotalMinorUnits(),
+                total.getPaymentCount(),
+                total.getLastPaymentId());
+    }
+
+    private void addPayments(CustomerPaymentTotal delta) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                jdbcTemplate.update(ADD_PAYMENTS,
+                        delta.getId().getCustomerId(),
+                        delta.getId().getCurrency().ordinal(),
+                        delta.getTotalMinorUnits(),
+                        delta.getPaymentCount(),
+                        delta.getLastPaymentId());
+                return;
+            } catch (DuplicateKeyException e) {
+                //a concurrent first payment inserted the total after the merge looked for it. where only the
+                //statement failed, not the transaction, the merge run again adds to that total
+                if (!retriesMergeInTransaction || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static CustomerPaymentTotal combine(CustomerPaymentTotal total, CustomerPaymentTotal payment) {
+        return new CustomerPaymentTotal(total.getId(),
+                Math.addExact(total.getTotalMinorUnits(), payment.getTotalMinorUnits()),
+                total.getPaymentCount() + payment.getPaymentCount(),
+                latest(total.getLastPaymentId(), payment.getLastPaymentId()));
+    }
+
+    private static Long latest(Long paymentId, Long otherPaymentId) {
+        if (paymentId == null || otherPaymentId == null) {
+            return paymentId == null ? otherPaymentId : paymentId;
+        }
+        return Math.max(paymentId, otherPaymentId);
+    }
+}
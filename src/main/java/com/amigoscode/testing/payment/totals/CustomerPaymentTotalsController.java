@@ -0,0 +1,33 @@
+package com.amigoscode.testing.payment.totals;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("api/v1/payment-totals")
+public class CustomerPaymentTotalsController {
+
+    private final CustomerPaymentTotals customerPaymentTotals;
+
+    @Autowired
+    public CustomerPaymentTotalsController(CustomerPaymentTotals customerPaymentTotals) {
+        this.customerPaymentTotals = customerPaymentTotals;
+    }
+
+    @GetMapping
+    public List<CustomerPaymentTotal> getCustomerPaymentTotals(@RequestParam UUID customerId) {
+        return customerPaymentTotals.selectCustomerPaymentTotals(customerId);
+    }
+
+    @PostMapping("rebuild")
+    public void rebuild() {
+        customerPaymentTotals.rebuild();
+    }
+}
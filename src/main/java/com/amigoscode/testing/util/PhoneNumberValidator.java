@@ -1,11 +1,172 @@
 package com.amigoscode.testing.util;
 
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 
+//validates international numbers against per country length rules loaded once at startup.
+//accepts a leading + or 00 and ignores spaces, dashes, dots and brackets. a (0) straight after the country code
+//is the national trunk prefix, which is not dialled from abroad and is not part of the number
+@Component
 public class PhoneNumberValidator implements Predicate<String> {
 
+    static final String RULES_RESOURCE = "phone-number-rules.properties";
+    private static final int MAX_E164_DIGITS = 15;
+    //the root is never anyone's child, so 0 doubles as "no child"
+    private static final int ROOT = 0;
+
+    //trie over country calling code digits, the children of node n are children[n * 10 + digit]
+    private final int[] children;
+    //national number length range of the country code ending at a node, 0 when none ends there
+    private final byte[] minNationalLength;
+    private final byte[] maxNationalLength;
+
+    public PhoneNumberValidator() {
+        this(loadRules());
+    }
+
+    PhoneNumberValidator(Map<String, String> rules) {
+        int[] children = new int[10];
+        byte[] minNationalLength = new byte[1];
+        byte[] maxNationalLength = new byte[1];
+        int nodes = 1;
+
+        for (Map.Entry<String, String> rule : new TreeMap<>(rules).entrySet()) {
+            String countryCode = rule.getKey().trim();
+            int node = ROOT;
+            for (int i = 0; i < countryCode.length(); i++) {
+                int digit = countryCode.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalStateException(String.format("country code: [%s] is not valid", countryCode));
+                }
+                if (minNationalLength[node] != 0) {
+                    throw new IllegalStateException(String.format("country code: [%s] overlaps a shorter code", countryCode));
+                }
+                if (children[node * 10 + digit] == ROOT) {
+                    if (nodes == minNationalLength.length) {
+                        children = Arrays.copyOf(children, nodes * 20);
+                        minNationalLength = Arrays.copyOf(minNationalLength, nodes * 2);
+                        maxNationalLength = Arrays.copyOf(maxNationalLength, nodes * 2);
+                    }
+                    children[node * 10 + digit] = nodes++;
+                }
+                node = children[node * 10 + digit];
+            }
+
+            String[] range = rule.getValue().trim().split("-");
+            int min = Integer.parseInt(range[0].trim());
+            int max = Integer.parseInt(range[range.length - 1].trim());
+            if (node == ROOT || min < 1 || max < min || countryCode.length() + max > MAX_E164_DIGITS) {
+                throw new IllegalStateException(String.format("phone number rule: [%s=%s] is not valid", countryCode, rule.getValue()));
+            }
+            for (int digit = 0; digit < 10; digit++) {
+                if (children[node * 10 + digit] != ROOT) {
+                    throw new IllegalStateException(String.format("country code: [%s] is a prefix of a longer code", countryCode));
+                }
+            }
+            minNationalLength[node] = (byte) min;
+            maxNationalLength[node] = (byte) max;
+        }
+
+        this.children = Arrays.copyOf(children, nodes * 10);
+        this.minNationalLength = Arrays.copyOf(minNationalLength, nodes);
+        this.maxNationalLength = Arrays.copyOf(maxNationalLength, nodes);
+    }
+
     @Override
     public boolean test(String phoneNumber) {
-        return phoneNumber.startsWith("+44");
+        return isValid(phoneNumber);
+    }
+
+    public boolean isValid(CharSequence phoneNumber) {
+        return scan(phoneNumber, null);
+    }
+
+    //the number in E.164 form (+ and digits only), empty when it is not valid
+    public Optional<String> normalize(CharSequence phoneNumber) {
+        StringBuilder e164 = new StringBuilder(MAX_E164_DIGITS + 1).append('+');
+        return scan(phoneNumber, e164) ? Optional.of(e164.toString()) : Optional.empty();
+    }
+
+    //single pass over the number, appending its digits to e164 when one is given
+    private boolean scan(CharSequence phoneNumber, StringBuilder e164) {
+        if (phoneNumber == null) {
+            return false;
+        }
+
+        int length = phoneNumber.length();
+        int i = 0;
+        while (i < length && phoneNumber.charAt(i) == ' ') {
+            i++;
+        }
+
+        //international prefix
+        if (i < length && phoneNumber.charAt(i) == '+') {
+            i++;
+        } else if (i + 1 < length && phoneNumber.charAt(i) == '0' && phoneNumber.charAt(i + 1) == '0') {
+            i += 2;
+        } else {
+            return false;
+        }
+
+        int node = ROOT;
+        boolean isCountryCodeRead = false;
+        int digits = 0;
+        int nationalDigits = 0;
+        for (; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_E164_DIGITS) {
+                    return false;
+                }
+                if (isCountryCodeRead) {
+                    nationalDigits++;
+                } else {
+                    node = children[node * 10 + (c - '0')];
+                    if (node == ROOT) {
+                        return false;
+                    }
+                    isCountryCodeRead = minNationalLength[node] != 0;
+                }
+                if (e164 != null) {
+                    e164.append(c);
+                }
+            } else if (c == '(' && isCountryCodeRead && nationalDigits == 0 && isTrunkPrefix(phoneNumber, i)) {
+                i += 2;
+            } else if (!isSeparator(c)) {
+                return false;
+            }
+        }
+
+        return isCountryCodeRead
+                && nationalDigits >= minNationalLength[node]
+                && nationalDigits <= maxNationalLength[node];
+    }
+
+    private static boolean isTrunkPrefix(CharSequence phoneNumber, int i) {
+        return i + 2 < phoneNumber.length() && phoneNumber.charAt(i + 1) == '0' && phoneNumber.charAt(i + 2) == ')';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '.' || c == '(' || c == ')';
+    }
+
+    private static Map<String, String> loadRules() {
+        try {
+            Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource(RULES_RESOURCE));
+            Map<String, String> rules = new TreeMap<>();
+            properties.stringPropertyNames().forEach(countryCode -> rules.put(countryCode, properties.getProperty(countryCode)));
+            return rules;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot load phone number rules from [%s]", RULES_RESOURCE), e);
+        }
     }
 }
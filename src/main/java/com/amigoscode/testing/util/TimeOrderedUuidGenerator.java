@@ -0,0 +1,51 @@
+package com.amigoscode.testing.util;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//version 7 uuids (RFC 9562): 48 bits of unix milliseconds, a 12 bit counter, then 62 random bits.
+//ids made later sort later, so new rows go to the right edge of the primary key index instead of splitting
+//pages all over it. they are still plain uuids on the wire and in the uuid column, so existing random ids
+//stay valid next to them
+@Component
+public class TimeOrderedUuidGenerator {
+
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long VERSION_7 = 0x7000L;
+    private static final long IETF_VARIANT = 0x8000000000000000L;
+
+    private final Clock clock;
+    //milliseconds << COUNTER_BITS | counter, of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    public TimeOrderedUuidGenerator() {
+        this(Clock.systemUTC());
+    }
+
+    TimeOrderedUuidGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    public UUID next() {
+        long now = clock.millis() << COUNTER_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            //a new millisecond restarts the counter. within the same one, or if the clock stepped back,
+            //it counts on from the last id and carries into the timestamp when it runs out, so ids from
+            //this generator always increase
+            next = Math.max(now, previous + 1);
+        } while (!last.compareAndSet(previous, next));
+
+        long mostSignificantBits = (next >>> COUNTER_BITS) << 16 | VERSION_7 | (next & COUNTER_MASK);
+        //not a secret, clients can already choose their own customer ids
+        long leastSignificantBits = IETF_VARIANT | ThreadLocalRandom.current().nextLong() >>> 2;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
@@ -0,0 +1,49 @@
+create table customer (
+    id uuid not null,
+    name varchar(255) not null,
+    phone_number varchar(255) not null,
+    constraint customer_pk primary key (id),
+    constraint customer_phone_number_uk unique (phone_number)
+);
+
+-- ids are handed out in blocks of the increment, see PaymentIdGenerator
+create sequence payment_id_seq start with 1 increment by 50;
+
+-- currency is Currency's ordinal, the same number the payment journal stores
+create table payment (
+    payment_id bigint not null,
+    customer_id uuid not null,
+    amount bigint not null,
+    currency smallint not null,
+    source varchar(255),
+    description varchar(255),
+    constraint payment_pk primary key (payment_id)
+);
+
+-- payment history pages through a customer's payments in payment_id order
+create index payment_customer_id_payment_id_idx on payment (customer_id, payment_id);
+
+create table customer_payment_total (
+    customer_id uuid not null,
+    currency smallint not null,
+    total_amount bigint not null,
+    payment_count bigint not null,
+    last_payment_id bigint,
+    constraint customer_payment_total_pk primary key (customer_id, currency)
+);
+
+create table payment_idempotency_key (
+    idempotency_key varchar(255) not null,
+    state varchar(255) not null,
+    created_at timestamp not null,
+    constraint payment_idempotency_key_pk primary key (idempotency_key)
+);
+
+-- expired keys are purged by created_at
+create index payment_idempotency_key_created_at_idx on payment_idempotency_key (created_at);
+
+create table payment_journal_checkpoint (
+    id integer not null,
+    position bigint not null,
+    constraint payment_journal_checkpoint_pk primary key (id)
+);
@@ -0,0 +1,2 @@
+-- hash of the payment a key was first sent with, keys stored before it match any payment
+alter table payment_idempotency_key add column fingerprint varchar(64);
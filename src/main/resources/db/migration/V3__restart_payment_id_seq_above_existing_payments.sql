@@ -0,0 +1,4 @@
+-- a schema baselined from before flyway may have payments and no payment_id_seq, or a sequence behind them.
+-- pooled-lo hands out the block starting at the value drawn, so the next value is the first free id
+create sequence if not exists payment_id_seq start with 1 increment by 50;
+alter sequence payment_id_seq restart with (select coalesce(max(payment_id), 0) + 1 from payment) increment by 50;
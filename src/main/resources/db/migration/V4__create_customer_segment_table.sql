@@ -0,0 +1,8 @@
+-- the segment whose currency policy a customer's payments are checked against, customers without a row are in
+-- the default segment
+create table customer_segment (
+    customer_id uuid not null,
+    segment varchar(255) not null,
+    constraint customer_segment_pk primary key (customer_id),
+    constraint customer_segment_customer_fk foreign key (customer_id) references customer (id)
+);
@@ -0,0 +1,12 @@
+-- the payment table of one payment partition, ids come from payment_id_seq on the main database
+create table payment (
+    payment_id bigint not null,
+    customer_id uuid not null,
+    amount bigint not null,
+    currency smallint not null,
+    source varchar(255),
+    description varchar(255),
+    constraint payment_pk primary key (payment_id)
+);
+
+create index payment_customer_id_payment_id_idx on payment (customer_id, payment_id);
@@ -0,0 +1,91 @@
+package com.amigoscode.testing.config;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerExistenceChecker;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.customer.CustomerRegistrationService;
+import com.amigoscode.testing.customer.CustomerRepository;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//two unrelated in memory databases, so whatever is only in the replica was read from it
+@SpringBootTest(properties = {
+        "datasource.replica.enabled=true",
+        "datasource.replica.max-lag=PT1M",
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "datasource.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1"
+})
+class ReplicaRoutingConfigTest {
+
+    @Autowired private CustomerRepository customerRepository;
+    @Autowired private CustomerRegistrationService customerRegistrationService;
+    @Autowired private CustomerExistenceChecker customerExistenceChecker;
+    @Autowired @Qualifier("primaryDataSource") private DataSource primaryDataSource;
+    @Autowired @Qualifier("replicaDataSource") private DataSource replicaDataSource;
+
+    @BeforeEach
+    void setUp() {
+        //a real replica gets its schema from the primary
+        Flyway.configure().dataSource(replicaDataSource).load().migrate();
+    }
+
+    @Test
+    void itShouldRunReadOnlyLookupsOnReplica() {
+        //given a customer only the replica has
+        UUID customerId = UUID.randomUUID();
+        new JdbcTemplate(replicaDataSource).update("insert into customer (id, name, phone_number) values (?, ?, ?)",
+                customerId, "Ali", "+447000000001");
+
+        //then
+        assertThat(customerRepository.selectCustomerByPhoneNumber("+447000000001")).isPresent();
+        assertThat(customerRepository.existsById(customerId)).isTrue();
+        assertThat(countCustomers(primaryDataSource, customerId)).isZero();
+    }
+
+    @Test
+    void itShouldWriteToPrimaryAndReadOwnWritesFromPrimary() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer(customerId, "Maryam", "+447000000002");
+
+        //when
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+
+        //then the replica has not caught up, but the customer can pay straight away
+        assertThat(countCustomers(primaryDataSource, customerId)).isOne();
+        assertThat(customerRepository.existsById(customerId)).isFalse();
+        assertThat(customerExistenceChecker.exists(customerId)).isTrue();
+    }
+
+    @Test
+    void itShouldFindCustomerReplicaIsStillMissingAfterMaxLag() {
+        //given customers registered before the window, that the replica never got
+        UUID customerId = UUID.randomUUID();
+        UUID otherCustomerId = UUID.randomUUID();
+        JdbcTemplate primary = new JdbcTemplate(primaryDataSource);
+        primary.update("insert into customer (id, name, phone_number) values (?, ?, ?)", customerId, "Yusuf", "+447000000003");
+        primary.update("insert into customer (id, name, phone_number) values (?, ?, ?)", otherCustomerId, "Amina", "+447000000004");
+
+        //then
+        assertThat(customerRepository.existsById(customerId)).isFalse();
+        assertThat(customerExistenceChecker.exists(customerId)).isTrue();
+        assertThat(customerExistenceChecker.selectExisting(List.of(otherCustomerId, UUID.randomUUID())))
+                .containsExactly(otherCustomerId);
+    }
+
+    private static Integer countCustomers(DataSource dataSource, UUID customerId) {
+        return new JdbcTemplate(dataSource).queryForObject("select count(*) from customer where id = ?",
+                Integer.class, customerId);
+    }
+}
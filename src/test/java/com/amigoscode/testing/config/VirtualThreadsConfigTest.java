@@ -0,0 +1,35 @@
+package com.amigoscode.testing.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "threads.virtual.enabled=true")
+class VirtualThreadsConfigTest {
+
+    @Autowired private ServletWebServerApplicationContext applicationContext;
+
+    @Test
+    void itShouldHandleRequestsOnVirtualThreads() {
+        //given
+        TomcatWebServer webServer = (TomcatWebServer) applicationContext.getWebServer();
+        ProtocolHandler protocolHandler = webServer.getTomcat().getConnector().getProtocolHandler();
+        Executor executor = protocolHandler.getExecutor();
+
+        //when
+        CompletableFuture<Boolean> isVirtual = CompletableFuture.supplyAsync(() -> Thread.currentThread().isVirtual(), executor);
+
+        //then
+        assertThat(isVirtual.join()).isTrue();
+    }
+}
@@ -0,0 +1,95 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.datasource.ReadYourWrites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class CustomerExistenceCheckerTest {
+
+    @Mock private CustomerRepository customerRepository;
+    private CustomerExistenceChecker underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new CustomerExistenceChecker(customerRepository, new KnownCustomerIds(1024),
+                new ReadYourWrites(false, Duration.ZERO));
+    }
+
+    @Test
+    void itShouldRememberExistingCustomer() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        //when
+        boolean first = underTest.exists(customerId);
+        boolean second = underTest.exists(customerId);
+
+        //then only the first check reaches the database
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        then(customerRepository).should(times(1)).existsById(customerId);
+    }
+
+    @Test
+    void itShouldNotRememberMissingCustomer() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(false);
+
+        //when
+        underTest.exists(customerId);
+        boolean exists = underTest.exists(customerId);
+
+        //then
+        assertThat(exists).isFalse();
+        then(customerRepository).should(times(2)).existsById(customerId);
+    }
+
+    @Test
+    void itShouldOnlyQueryUnknownCustomersOfBatch() {
+        //given one known customer
+        UUID known = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        given(customerRepository.existsById(known)).willReturn(true);
+        underTest.exists(known);
+
+        given(customerRepository.selectExistingIds(List.of(unknown))).willReturn(List.of(unknown));
+        given(customerRepository.selectExistingIds(List.of(missing))).willReturn(List.of());
+
+        //when
+        Set<UUID> existing = underTest.selectExisting(List.of(known, unknown));
+        Set<UUID> none = underTest.selectExisting(List.of(missing));
+
+        //then
+        assertThat(existing).containsExactlyInAnyOrder(known, unknown);
+        assertThat(none).isEmpty();
+    }
+
+    @Test
+    void itShouldNotFindCustomerWithoutId() {
+        //when
+        boolean exists = underTest.exists(null);
+        Set<UUID> existing = underTest.selectExisting(Arrays.asList(null, null));
+
+        //then
+        assertThat(exists).isFalse();
+        assertThat(existing).isEmpty();
+        then(customerRepository).shouldHaveNoInteractions();
+    }
+}
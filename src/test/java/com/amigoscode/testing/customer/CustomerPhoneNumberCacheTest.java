@@ -0,0 +1,81 @@
+package com.amigoscode.testing.customer;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerPhoneNumberCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private CustomerPhoneNumberCache underTest;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = nanos::get;
+        underTest = new CustomerPhoneNumberCache(2, Duration.ofMinutes(10), ticker);
+    }
+
+    @Test
+    void itShouldReturnCachedCustomer() {
+        //given
+        Customer customer = new Customer(UUID.randomUUID(), "Max", "+441111111");
+        underTest.put(customer);
+
+        //when
+        //then
+        assertThat(underTest.get("+441111111"))
+                .hasValueSatisfying(c -> assertThat(c).isEqualToComparingFieldByField(customer));
+        assertThat(underTest.get("+442222222")).isNotPresent();
+        assertThat(underTest.stats().hitCount()).isEqualTo(1);
+        assertThat(underTest.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldExpireCustomerAfterTtl() {
+        //given
+        underTest.put(new Customer(UUID.randomUUID(), "Max", "+441111111"));
+
+        //when
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+
+        //then
+        assertThat(underTest.get("+441111111")).isNotPresent();
+    }
+
+    @Test
+    void itShouldEvictWhenFull() {
+        //given
+        for (int i = 0; i < 10; i++) {
+            underTest.put(new Customer(UUID.randomUUID(), "Max", "+44" + i));
+        }
+
+        //when
+        //then
+        assertThat(underTest.stats().evictionCount()).isEqualTo(8);
+    }
+
+    @Test
+    void itShouldPublishHitRateAsMeters() {
+        //given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CustomerPhoneNumberCache monitored = new CustomerPhoneNumberCache(10, Duration.ofMinutes(10), meterRegistry);
+        monitored.put(new Customer(UUID.randomUUID(), "Max", "+441111111"));
+
+        //when
+        monitored.get("+441111111");
+        monitored.get("+442222222");
+
+        //then
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.phone-number").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.phone-number").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+}
@@ -1,33 +1,54 @@
 package com.amigoscode.testing.customer;
 
+import com.amigoscode.testing.datasource.ReadYourWrites;
 import com.amigoscode.testing.util.PhoneNumberValidator;
+import com.amigoscode.testing.util.TimeOrderedUuidGenerator;
+import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 class CustomerRegistrationServiceTest {
     @Mock private CustomerRepository customerRepository;
     @Mock private PhoneNumberValidator phoneNumberValidator;
     @Captor private ArgumentCaptor<Customer> customerArgumentCaptor;
+    private CustomerPhoneNumberCache phoneNumberCache;
     private CustomerRegistrationService customerRegistrationService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
-        customerRegistrationService = new CustomerRegistrationService(customerRepository, phoneNumberValidator);
+        phoneNumberCache = new CustomerPhoneNumberCache(100, Duration.ofMinutes(10));
+        customerRegistrationService = new CustomerRegistrationService(customerRepository, phoneNumberValidator, phoneNumberCache,
+                new TimeOrderedUuidGenerator(), new ReadYourWrites(false, Duration.ZERO));
     }
 
     @Test
@@ -42,7 +63,7 @@ class CustomerRegistrationServiceTest {
         //no customer with phone number passed
         given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
 
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //when
         customerRegistrationService.registerNewCustomer(registrationRequest);
@@ -53,6 +74,24 @@ class CustomerRegistrationServiceTest {
         assertThat(customerArgumentCaptorValue).isEqualTo(customer);
     }
 
+    @Test
+    void itShouldSaveNewCustomerWithNormalizedPhoneNumber() {
+        // given a phone number written with separators
+        String phoneNumber = "0044 7000 000-000";
+        String normalizedPhoneNumber = "+447000000000";
+        Customer customer = new Customer(UUID.randomUUID(), "Max", phoneNumber);
+
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(normalizedPhoneNumber));
+        given(customerRepository.selectCustomerByPhoneNumber(normalizedPhoneNumber)).willReturn(Optional.empty());
+
+        //when
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+
+        //then
+        then(customerRepository).should().save(customerArgumentCaptor.capture());
+        assertThat(customerArgumentCaptor.getValue().getPhoneNumber()).isEqualTo(normalizedPhoneNumber);
+    }
+
     @Test
     void itShouldSaveNewCustomerWhenIdIsNull() {
         // given a phone number and a customer
@@ -65,7 +104,7 @@ class CustomerRegistrationServiceTest {
         //no customer with phone number passed
         given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
 
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //when
         customerRegistrationService.registerNewCustomer(registrationRequest);
@@ -75,6 +114,7 @@ class CustomerRegistrationServiceTest {
         Customer customerArgumentCaptorValue = customerArgumentCaptor.getValue();
         assertThat(customerArgumentCaptorValue).isEqualToIgnoringGivenFields(customer, "id");
         assertThat(customerArgumentCaptorValue.getId()).isNotNull();
+        assertThat(customerArgumentCaptorValue.getId().version()).isEqualTo(7);
     }
 
     @Test
@@ -90,7 +130,7 @@ class CustomerRegistrationServiceTest {
         //existing customer with phone number passed
         given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.of(customer));
 
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //when
         customerRegistrationService.registerNewCustomer(registrationRequest);
@@ -114,7 +154,7 @@ class CustomerRegistrationServiceTest {
         //existing customer with phone number passed
         given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.of(customerTwo));
 
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //when
         //then
@@ -125,4 +165,215 @@ class CustomerRegistrationServiceTest {
         //finally
         then(customerRepository).should(never()).save(any(Customer.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldRegisterNewCustomersInBulk() {
+        // given a new customer, an existing customer, a taken phone number and an invalid phone number
+        Customer newCustomer = new Customer(null, "Max", "+441111111");
+        Customer existingCustomer = new Customer(UUID.randomUUID(), "Alex", "+442222222");
+        Customer takenCustomer = new Customer(null, "John", "+442222222");
+        Customer invalidCustomer = new Customer(null, "Ann", "0033333333");
+
+        given(phoneNumberValidator.normalize(any())).willAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+        given(phoneNumberValidator.normalize("0033333333")).willReturn(Optional.empty());
+
+        //only the existing customer is found, with a single lookup for all valid phone numbers
+        given(customerRepository.selectCustomersByPhoneNumbers(Set.of("+441111111", "+442222222")))
+                .willReturn(List.of(existingCustomer));
+
+        //when
+        List<CustomerRegistrationResult> results = customerRegistrationService.registerNewCustomers(List.of(
+                new CustomerRegistrationRequest(newCustomer),
+                new CustomerRegistrationRequest(new Customer(null, "Alex", "+442222222")),
+                new CustomerRegistrationRequest(takenCustomer),
+                new CustomerRegistrationRequest(invalidCustomer)
+        ));
+
+        //then
+        assertThat(results)
+                .extracting(CustomerRegistrationResult::getStatus)
+                .containsExactly(
+                        CustomerRegistrationResult.Status.REGISTERED,
+                        CustomerRegistrationResult.Status.ALREADY_REGISTERED,
+                        CustomerRegistrationResult.Status.PHONE_NUMBER_TAKEN,
+                        CustomerRegistrationResult.Status.INVALID_PHONE_NUMBER);
+        assertThat(results.get(0).getCustomerId()).isNotNull();
+        assertThat(results.get(1).getCustomerId()).isEqualTo(existingCustomer.getId());
+
+        then(customerRepository).should().insertAll(List.of(newCustomer));
+        then(customerRepository).should(never()).save(any());
+    }
+
+    @Test
+    void itShouldReportBulkRowsRegisteredConcurrently() {
+        // given two new customers, one of whose numbers John registers before our insert
+        Customer max = new Customer(null, "Max", "+445555551");
+        Customer ann = new Customer(null, "Ann", "+445555552");
+        Customer john = new Customer(UUID.randomUUID(), "John", "+445555552");
+
+        given(phoneNumberValidator.normalize(any())).willAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+        given(customerRepository.selectCustomersByPhoneNumbers(anyCollection()))
+                .willReturn(List.of())
+                .willReturn(List.of(john));
+        willThrow(new DataIntegrityViolationException("unique")).willDoNothing()
+                .given(customerRepository).insertAll(anyList());
+
+        //when
+        List<CustomerRegistrationResult> results = customerRegistrationService.registerNewCustomers(List.of(
+                new CustomerRegistrationRequest(max),
+                new CustomerRegistrationRequest(ann)));
+
+        //then the chunk is inserted again without Ann
+        assertThat(results)
+                .extracting(CustomerRegistrationResult::getStatus)
+                .containsExactly(
+                        CustomerRegistrationResult.Status.REGISTERED,
+                        CustomerRegistrationResult.Status.PHONE_NUMBER_TAKEN);
+        assertThat(results.get(1).getCustomerId()).isEqualTo(john.getId());
+        assertThat(results.get(1).getIndex()).isEqualTo(1);
+        then(customerRepository).should(times(2)).insertAll(anyList());
+        assertThat(phoneNumberCache.get("+445555552")).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("John"));
+    }
+
+    @Test
+    void itShouldRegisterPhoneNumberRepeatedInBulkOnlyOnce() {
+        // given the same customer twice and a different name for the same phone number
+        String phoneNumber = "+444444444";
+        Customer customer = new Customer(null, "Max", phoneNumber);
+
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
+        given(customerRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(List.of());
+
+        //when
+        List<CustomerRegistrationResult> results = customerRegistrationService.registerNewCustomers(List.of(
+                new CustomerRegistrationRequest(customer),
+                new CustomerRegistrationRequest(new Customer(null, "Max", phoneNumber)),
+                new CustomerRegistrationRequest(new Customer(null, "John", phoneNumber))
+        ));
+
+        //then
+        assertThat(results)
+                .extracting(CustomerRegistrationResult::getStatus)
+                .containsExactly(
+                        CustomerRegistrationResult.Status.REGISTERED,
+                        CustomerRegistrationResult.Status.ALREADY_REGISTERED,
+                        CustomerRegistrationResult.Status.PHONE_NUMBER_TAKEN);
+        then(customerRepository).should().insertAll(List.of(customer));
+    }
+
+    @Test
+    void itShouldLookUpPhoneNumbersOncePerChunk() {
+        // given more rows than fit in one chunk
+        given(phoneNumberValidator.normalize(any())).willAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+        given(customerRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(List.of());
+
+        List<CustomerRegistrationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < CustomerRegistrationService.BULK_CHUNK_SIZE + 1; i++) {
+            requests.add(new CustomerRegistrationRequest(new Customer(null, "Max", "+44" + i)));
+        }
+
+        //when
+        List<CustomerRegistrationResult> results = customerRegistrationService.registerNewCustomers(requests);
+
+        //then
+        assertThat(results).hasSize(requests.size());
+        assertThat(results.get(requests.size() - 1).getIndex()).isEqualTo(requests.size() - 1);
+        then(customerRepository).should(times(2)).selectCustomersByPhoneNumbers(anyCollection());
+        then(customerRepository).should(times(2)).insertAll(any());
+    }
+
+    @Test
+    void itShouldNotLookUpReplayedRegistration() {
+        // given a phone number and a customer
+        String phoneNumber = "+445555555";
+        Customer customer = new Customer(null, "Max", phoneNumber);
+
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
+
+        //when registered and then replayed
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(new Customer(null, "Max", phoneNumber)));
+
+        //then the replay is answered by the cache
+        then(customerRepository).should(times(1)).selectCustomerByPhoneNumber(phoneNumber);
+        then(customerRepository).should(times(1)).save(any(Customer.class));
+        assertThat(phoneNumberCache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldThrowWhenPhoneNumberIsTakenConcurrently() {
+        // given a phone number and a customer
+        String phoneNumber = "+446666666";
+        Customer customer = new Customer(null, "Max", phoneNumber);
+
+        //not there at lookup time, taken by John before our insert
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber))
+                .willReturn(Optional.empty())
+                .willReturn(Optional.of(new Customer(UUID.randomUUID(), "John", phoneNumber)));
+        given(customerRepository.save(any(Customer.class))).willThrow(new DataIntegrityViolationException("unique"));
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
+
+        //when
+        //then
+        assertThatThrownBy(() -> customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(String.format("phone number: [%s] is taken", phoneNumber));
+        assertThat(phoneNumberCache.get(phoneNumber)).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("John"));
+    }
+
+    @Test
+    void itShouldRegisterConcurrentDuplicatesOnce() throws Exception {
+        //given a registration held in the database
+        String phoneNumber = "+447000000000";
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
+        given(customerRepository.save(any(Customer.class))).willAnswer(invocation -> {
+            arrived.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        });
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(null, "Max", phoneNumber))));
+        assertThat(arrived.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when the same number is registered again while it is held
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> duplicates = new ArrayList<>();
+        for (String name : List.of("Max", "Max", "John")) {
+            Thread duplicate = new Thread(() -> {
+                try {
+                    customerRegistrationService.registerNewCustomer(
+                            new CustomerRegistrationRequest(new Customer(null, name, phoneNumber)));
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            });
+            duplicate.start();
+            duplicates.add(duplicate);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Thread duplicate : duplicates) {
+            while (duplicate.getState() != Thread.State.WAITING) {
+                if (!duplicate.isAlive() || System.nanoTime() - deadline > 0) {
+                    fail("duplicate registration did not wait for the first one: " + failures);
+                }
+                Thread.sleep(1);
+            }
+        }
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (Thread duplicate : duplicates) {
+            duplicate.join(5_000);
+        }
+
+        //then the duplicates waited for the first registration and did not reach the database
+        then(customerRepository).should(times(1)).selectCustomerByPhoneNumber(phoneNumber);
+        then(customerRepository).should(times(1)).save(any(Customer.class));
+        assertThat(failures).singleElement(InstanceOfAssertFactories.THROWABLE)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage(String.format("phone number: [%s] is taken", phoneNumber));
+    }
+}
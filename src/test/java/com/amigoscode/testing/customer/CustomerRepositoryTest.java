@@ -7,7 +7,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -88,4 +90,34 @@ public class CustomerRepositoryTest {
                 .hasMessageContaining("not-null property references a null or transient value : com.amigoscode.testing.customer.Customer.phoneNumber")
                 .isInstanceOf(DataIntegrityViolationException.class);
     }
+
+    @Test
+    void itShouldSelectCustomersByPhoneNumbers() {
+        //given
+        Customer max = new Customer(UUID.randomUUID(), "Max", "+4411111");
+        Customer alex = new Customer(UUID.randomUUID(), "Alex", "+4422222");
+        Customer john = new Customer(UUID.randomUUID(), "John", "+4433333");
+        customerRepository.insertAll(List.of(max, alex, john));
+
+        //when
+        List<Customer> customers = customerRepository.selectCustomersByPhoneNumbers(Set.of("+4411111", "+4433333", "+4499999"));
+
+        //then
+        assertThat(customers)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyInAnyOrder(max, john);
+    }
+
+    @Test
+    void itShouldSelectExistingIds() {
+        //given
+        UUID id = UUID.randomUUID();
+        customerRepository.save(new Customer(id, "Max", "+4411111"));
+
+        //when
+        List<UUID> ids = customerRepository.selectExistingIds(List.of(id, UUID.randomUUID()));
+
+        //then
+        assertThat(ids).containsExactly(id);
+    }
 }
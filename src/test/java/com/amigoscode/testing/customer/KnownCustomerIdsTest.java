@@ -0,0 +1,58 @@
+package com.amigoscode.testing.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KnownCustomerIdsTest {
+
+    @Test
+    void itShouldContainAddedId() {
+        //given
+        KnownCustomerIds underTest = new KnownCustomerIds(1024);
+        UUID id = UUID.randomUUID();
+
+        //when
+        underTest.add(id);
+
+        //then
+        assertThat(underTest.contains(id)).isTrue();
+        assertThat(underTest.contains(UUID.randomUUID())).isFalse();
+    }
+
+    @Test
+    void itShouldNeverHoldMoreIdsThanItsCapacity() {
+        //given a single bucket
+        KnownCustomerIds underTest = new KnownCustomerIds(KnownCustomerIds.BUCKET_SIZE);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < KnownCustomerIds.BUCKET_SIZE + 1; i++) {
+            ids.add(UUID.randomUUID());
+        }
+
+        //when
+        ids.forEach(underTest::add);
+
+        //then the oldest id made room for the newest
+        assertThat(underTest.contains(ids.get(0))).isFalse();
+        for (UUID id : ids.subList(1, ids.size())) {
+            assertThat(underTest.contains(id)).isTrue();
+        }
+    }
+
+    @Test
+    void itShouldIgnoreNilId() {
+        //given
+        KnownCustomerIds underTest = new KnownCustomerIds(1024);
+        UUID nil = new UUID(0, 0);
+
+        //when
+        underTest.add(nil);
+
+        //then
+        assertThat(underTest.contains(nil)).isFalse();
+    }
+}
@@ -0,0 +1,84 @@
+package com.amigoscode.testing.datasource;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private ReadYourWrites underTest;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = nanos::get;
+        underTest = new ReadYourWrites(Duration.ofSeconds(1), ticker);
+    }
+
+    @Test
+    void itShouldReadRecentWritesFromPrimaryUntilReplicaCatchesUp() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        underTest.wrote(customerId);
+
+        //when
+        boolean beforeMaxLag = underTest.read(customerId, ReplicaRoutingDataSource::isPinnedToPrimary);
+        nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+        boolean afterMaxLag = underTest.read(customerId, ReplicaRoutingDataSource::isPinnedToPrimary);
+
+        //then
+        assertThat(beforeMaxLag).isTrue();
+        assertThat(afterMaxLag).isFalse();
+        assertThat(ReplicaRoutingDataSource.isPinnedToPrimary()).isFalse();
+    }
+
+    @Test
+    void itShouldReadAllFromPrimaryIfAnyKeyWasWrittenRecently() {
+        //given
+        UUID written = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        underTest.wrote(written);
+
+        //then
+        assertThat(underTest.readAll(List.of(other, written), ReplicaRoutingDataSource::isPinnedToPrimary)).isTrue();
+        assertThat(underTest.readAll(List.of(other), ReplicaRoutingDataSource::isPinnedToPrimary)).isFalse();
+    }
+
+    @Test
+    void itShouldReadMissesAgainOnPrimary() {
+        //given a key written longer than max-lag ago, that the replica has still not caught up with
+        UUID customerId = UUID.randomUUID();
+        List<Boolean> reads = new ArrayList<>();
+
+        //when
+        boolean found = underTest.readConfirmingMiss(customerId, () -> {
+            reads.add(ReplicaRoutingDataSource.isPinnedToPrimary());
+            return ReplicaRoutingDataSource.isPinnedToPrimary();
+        }, result -> !result);
+
+        //then
+        assertThat(found).isTrue();
+        assertThat(reads).containsExactly(false, true);
+        assertThat(underTest.readAllConfirmingMiss(List.of(customerId), () -> List.of(customerId), List::isEmpty))
+                .containsExactly(customerId);
+    }
+
+    @Test
+    void itShouldRememberNothingWithoutReplica() {
+        //given
+        ReadYourWrites withoutReplica = new ReadYourWrites(false, Duration.ofSeconds(1));
+        UUID customerId = UUID.randomUUID();
+        withoutReplica.wrote(customerId);
+
+        //then
+        assertThat(withoutReplica.read(customerId, ReplicaRoutingDataSource::isPinnedToPrimary)).isFalse();
+    }
+}
@@ -0,0 +1,62 @@
+package com.amigoscode.testing.payment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void itShouldKeepAmountInMinorUnits() {
+        //when
+        Money money = Money.of(new BigDecimal("10.5"), Currency.USD);
+
+        //then
+        assertThat(money.getMinorUnits()).isEqualTo(1050L);
+        assertThat(money.toBigDecimal()).isEqualTo(new BigDecimal("10.50"));
+        assertThat(money).isEqualTo(Money.ofMinor(1050L, Currency.USD));
+        assertThat(money.toString()).isEqualTo("10.50 USD");
+    }
+
+    @Test
+    void itShouldNotAcceptFractionsOfMinorUnit() {
+        assertThatThrownBy(() -> Money.of(new BigDecimal("10.001"), Currency.GBP))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("10.001");
+    }
+
+    @Test
+    void itShouldAddAmountsOfSameCurrencyOnly() {
+        //given
+        Money money = Money.ofMinor(150L, Currency.GBP);
+
+        //then
+        assertThat(money.plus(Money.ofMinor(50L, Currency.GBP))).isEqualTo(Money.ofMinor(200L, Currency.GBP));
+        assertThatThrownBy(() -> money.plus(Money.ofMinor(50L, Currency.EUR)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void itShouldKeepPaymentJsonFlat() throws Exception {
+        //given
+        Payment payment = new Payment(null, UUID.randomUUID(), new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+
+        //when
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(payment));
+        Payment read = objectMapper.treeToValue(json, Payment.class);
+
+        //then
+        assertThat(json.get("amount").decimalValue()).isEqualByComparingTo("100.00");
+        assertThat(json.get("currency").asText()).isEqualTo("GBP");
+        assertThat(read.getAmount()).isEqualTo(payment.getAmount());
+        assertThat(read.getCustomerId()).isEqualTo(payment.getCustomerId());
+    }
+}
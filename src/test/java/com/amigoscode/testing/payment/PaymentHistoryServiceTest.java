@@ -0,0 +1,67 @@
+package com.amigoscode.testing.payment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentHistoryServiceTest {
+
+    @Mock private PaymentRepository paymentRepository;
+    private PaymentHistoryService underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new PaymentHistoryService(paymentRepository, 2);
+    }
+
+    @Test
+    void itShouldSeekEachPageAfterLastPaymentOfPreviousPage() {
+        //given three payments, two per page
+        UUID customerId = UUID.randomUUID();
+        given(paymentRepository.selectPaymentHistory(customerId, 0L, PageRequest.of(0, 2)))
+                .willReturn(List.of(entry(3L), entry(7L)));
+        given(paymentRepository.selectPaymentHistory(customerId, 7L, PageRequest.of(0, 2)))
+                .willReturn(List.of(entry(9L)));
+
+        //when
+        List<List<PaymentHistoryEntry>> pages = new ArrayList<>();
+        underTest.selectPaymentHistory(customerId, 0L).forEach(pages::add);
+
+        //then the short page is the last one, no query for a page after it
+        assertThat(pages).hasSize(2);
+        assertThat(pages.get(0)).extracting(PaymentHistoryEntry::getPaymentId).containsExactly(3L, 7L);
+        assertThat(pages.get(1)).extracting(PaymentHistoryEntry::getPaymentId).containsExactly(9L);
+        then(paymentRepository).should(never()).selectPaymentHistory(eq(customerId), eq(9L), any());
+    }
+
+    @Test
+    void itShouldNotQueryUntilHistoryIsRead() {
+        //when
+        Iterable<List<PaymentHistoryEntry>> pages = underTest.selectPaymentHistory(UUID.randomUUID(), 0L);
+
+        //then
+        then(paymentRepository).shouldHaveNoInteractions();
+        given(paymentRepository.selectPaymentHistory(any(), anyLong(), any())).willReturn(List.of());
+        assertThat(pages).isEmpty();
+    }
+
+    private static PaymentHistoryEntry entry(long paymentId) {
+        return new PaymentHistoryEntry(paymentId, Money.of(new BigDecimal("10.00"), Currency.USD), "donation");
+    }
+}
@@ -1,21 +1,33 @@
 package com.amigoscode.testing.payment;
 
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest(properties = {
-        "spring.jpa.properties.javax.persistence.validation.mode=none"
+        "spring.jpa.properties.javax.persistence.validation.mode=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
 })
 class PaymentRepositoryTest {
 
     @Autowired private PaymentRepository paymentRepository;
+    @Autowired private TestEntityManager entityManager;
+    @Autowired private JdbcTemplate jdbcTemplate;
 
     @Test
     void itShouldInsertPayment() {
@@ -36,4 +48,63 @@ class PaymentRepositoryTest {
                 .isPresent()
                 .hasValueSatisfying(p -> assertThat(p).isEqualTo(payment));
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldAssignIdsFromBlocksAndBatchTheInserts() {
+        //given
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            payments.add(new Payment(null, UUID.randomUUID(), new BigDecimal("10.00"), Currency.USD, "card123", "donation"));
+        }
+
+        //when
+        paymentRepository.saveAll(payments);
+
+        //then ids are known before anything is inserted
+        assertThat(statistics.getEntityInsertCount()).isZero();
+        assertThat(payments).extracting(Payment::getPaymentId).doesNotContainNull().doesNotHaveDuplicates();
+        for (int i = 1; i < payments.size(); i++) {
+            assertThat(payments.get(i).getPaymentId()).isEqualTo(payments.get(i - 1).getPaymentId() + 1);
+        }
+
+        //and go out as 3 insert batches of at most 50, after one sequence call per block
+        entityManager.flush();
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(120);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+    }
+
+    @Test
+    void itShouldPageHistoryThroughCustomerIdIndex() {
+        //when
+        String plan = jdbcTemplate.queryForObject(
+                "explain select payment_id, amount, currency, description from payment " +
+                        "where customer_id = ? and payment_id > ? order by payment_id",
+                String.class, UUID.randomUUID(), 0L);
+
+        //then
+        assertThat(plan).containsIgnoringCase("payment_customer_id_payment_id_idx");
+        assertThat(jdbcTemplate.queryForObject(
+                "select data_type from information_schema.columns where table_name = 'PAYMENT' and column_name = 'CURRENCY'",
+                String.class)).isEqualTo("SMALLINT");
+    }
+
+    @Test
+    void itShouldStartPaymentIdsAbovePaymentsStoredBeforeMigrating() {
+        //given a database with payments the sequence has not handed out
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:payment-id-migration;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate existing = new JdbcTemplate(dataSource);
+        Flyway.configure().dataSource(dataSource).target("2").load().migrate();
+        existing.update("insert into payment (payment_id, customer_id, amount, currency) values (?, ?, ?, ?)",
+                1000L, UUID.randomUUID(), 1000L, Currency.GBP.ordinal());
+
+        //when
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        //then
+        assertThat(new PaymentIdBlocks(existing).next()).isEqualTo(1001L);
+        existing.execute("drop all objects");
+    }
+}
@@ -1,7 +1,10 @@
 package com.amigoscode.testing.payment;
 
-import com.amigoscode.testing.customer.Customer;
-import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.customer.CustomerExistenceChecker;
+import com.amigoscode.testing.customer.CustomerSegments;
+import com.amigoscode.testing.payment.currency.CurrencyPolicy;
+import com.amigoscode.testing.payment.currency.UnsupportedCurrencyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -9,28 +12,39 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 
 class PaymentServiceTest {
-    @Mock private CustomerRepository customerRepository;
-    @Mock private PaymentRepository paymentRepository;
+    @Mock private CustomerExistenceChecker customerExistenceChecker;
+    @Mock private CustomerSegments customerSegments;
+    @Mock private PaymentWriter paymentWriter;
     @Mock private CardPaymentCharger cardPaymentCharger;
 
+    private SimpleMeterRegistry meterRegistry;
     private PaymentService underTest;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
-        underTest = new PaymentService(customerRepository, paymentRepository, cardPaymentCharger);
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new PaymentService(customerExistenceChecker, customerSegments, paymentWriter, cardPaymentCharger,
+                new CurrencyPolicy(Map.of(CurrencyPolicy.DEFAULT_SEGMENT, EnumSet.of(Currency.USD, Currency.GBP))),
+                2, meterRegistry);
     }
 
     @Test
@@ -39,7 +53,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         //customer exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceChecker.exists(customerId)).willReturn(true);
 
         //payment request
         PaymentRequest paymentRequest = new PaymentRequest(new Payment(
@@ -55,7 +69,6 @@ class PaymentServiceTest {
         given(cardPaymentCharger.chargeCard(
                 paymentRequest.getPayment().getSource(),
                 paymentRequest.getPayment().getAmount(),
-                paymentRequest.getPayment().getCurrency(),
                 paymentRequest.getPayment().getDescription()
         )).willReturn(new CardPaymentCharge(true));
 
@@ -64,11 +77,19 @@ class PaymentServiceTest {
 
         //then
         ArgumentCaptor<Payment> paymentArgumentCaptor = ArgumentCaptor.forClass(Payment.class);
-        then(paymentRepository).should().save(paymentArgumentCaptor.capture());
+        then(paymentWriter).should().write(paymentArgumentCaptor.capture());
         Payment paymentArgumentCaptorValue = paymentArgumentCaptor.getValue();
         assertThat(paymentArgumentCaptorValue).isEqualToIgnoringGivenFields(paymentRequest.getPayment(), "customerId");
 
         assertThat(paymentArgumentCaptorValue.getCustomerId()).isEqualTo(customerId);
+
+        //every stage is timed and the charge is counted as a success
+        for (String stage : List.of("customer_lookup", "currency_check", "charge", "save")) {
+            assertThat(meterRegistry.get("payment.stage").tag("stage", stage).timer().count()).isEqualTo(1);
+        }
+        assertThat(meterRegistry.get("payment.charges")
+                .tags("currency", "USD", "outcome", "success")
+                .counter().count()).isEqualTo(1);
     }
 
     @Test
@@ -77,7 +98,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         //customer exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceChecker.exists(customerId)).willReturn(true);
 
         //payment request
         PaymentRequest paymentRequest = new PaymentRequest(new Payment(
@@ -93,7 +114,6 @@ class PaymentServiceTest {
         given(cardPaymentCharger.chargeCard(
                 paymentRequest.getPayment().getSource(),
                 paymentRequest.getPayment().getAmount(),
-                paymentRequest.getPayment().getCurrency(),
                 paymentRequest.getPayment().getDescription()
         )).willReturn(new CardPaymentCharge(false));
 
@@ -103,7 +123,12 @@ class PaymentServiceTest {
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining(String.format("Card not debited for customer [%s]", customerId));
 
-        then(paymentRepository).should(never()).save(any(Payment.class));
+        then(paymentWriter).should(never()).write(any(Payment.class));
+
+        assertThat(meterRegistry.get("payment.charges")
+                .tags("currency", "USD", "outcome", "failure")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.stage").tag("stage", "save").timer().count()).isZero();
     }
 
     @Test
@@ -112,7 +137,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         //customer exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceChecker.exists(customerId)).willReturn(true);
 
         //payment request
         Currency currency = Currency.EUR;
@@ -132,9 +157,43 @@ class PaymentServiceTest {
 
         //then
         //no interaction with cardPaymentCharger
-        //no interaction with paymentRepository
+        //no interaction with paymentWriter
         then(cardPaymentCharger).shouldHaveNoInteractions();
-        then(paymentRepository).shouldHaveNoInteractions();
+        then(paymentWriter).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldAcceptSegmentOnlyCurrencyForCustomersInThatSegment() {
+        //given EUR taken from vip customers only
+        underTest = new PaymentService(customerExistenceChecker, customerSegments, paymentWriter, cardPaymentCharger,
+                new CurrencyPolicy(Map.of(
+                        CurrencyPolicy.DEFAULT_SEGMENT, EnumSet.of(Currency.USD, Currency.GBP),
+                        "vip", EnumSet.of(Currency.EUR))),
+                2, meterRegistry);
+        UUID vipCustomerId = UUID.randomUUID();
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceChecker.exists(any())).willReturn(true);
+        given(customerExistenceChecker.selectExisting(any())).willReturn(Set.of(vipCustomerId, customerId));
+        given(customerSegments.segmentOf(vipCustomerId)).willReturn(Optional.of("vip"));
+        given(customerSegments.segmentOf(customerId)).willReturn(Optional.empty());
+        given(customerSegments.segmentsOf(any())).willReturn(Map.of(vipCustomerId, "vip"));
+        given(cardPaymentCharger.chargeCard(any(), any(), any())).willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+
+        //when
+        underTest.chargeCard(vipCustomerId, new PaymentRequest(
+                new Payment(null, null, new BigDecimal("10.00"), Currency.EUR, "card123xx", "Donation")));
+        List<PaymentChargeResult> results = underTest.chargeCards(List.of(
+                new PaymentRequest(new Payment(null, vipCustomerId, new BigDecimal("10.00"), Currency.EUR, "card123xx", "Donation")),
+                new PaymentRequest(new Payment(null, customerId, new BigDecimal("10.00"), Currency.EUR, "card123xx", "Donation"))));
+
+        //then
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(
+                new Payment(null, null, new BigDecimal("10.00"), Currency.EUR, "card123xx", "Donation"))))
+                .isInstanceOf(UnsupportedCurrencyException.class);
+        assertThat(results).extracting(PaymentChargeResult::getStatus)
+                .containsExactly(PaymentChargeResult.Status.CHARGED, PaymentChargeResult.Status.CURRENCY_NOT_SUPPORTED);
     }
 
     @Test
@@ -144,7 +203,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         //customer not found
-        given(customerRepository.findById(customerId)).willReturn(Optional.empty());
+        given(customerExistenceChecker.exists(customerId)).willReturn(false);
 
         //when
         //then
@@ -153,8 +212,135 @@ class PaymentServiceTest {
                 .hasMessageContaining("Customer with id [" + customerId +"] not found");
 
         //no interaction with cardPaymentCharger
-        //no interaction with paymentRepository
+        //no interaction with paymentWriter
         then(cardPaymentCharger).shouldHaveNoInteractions();
-        then(paymentRepository).shouldHaveNoInteractions();
+        then(paymentWriter).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldChargeCardsInBatch() {
+        //given two existing customers and one unknown customer
+        UUID customerId = UUID.randomUUID();
+        UUID otherCustomerId = UUID.randomUUID();
+        UUID unknownCustomerId = UUID.randomUUID();
+
+        given(customerExistenceChecker.selectExisting(Set.of(customerId, otherCustomerId, unknownCustomerId)))
+                .willReturn(Set.of(customerId, otherCustomerId));
+
+        //payment requests
+        Payment charged = new Payment(null, customerId, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        Payment notDebited = new Payment(null, otherCustomerId, new BigDecimal("20.00"), Currency.GBP, "card2", "Donation");
+        Payment unsupportedCurrency = new Payment(null, customerId, new BigDecimal("30.00"), Currency.EUR, "card1", "Donation");
+        Payment unknownCustomer = new Payment(null, unknownCustomerId, new BigDecimal("40.00"), Currency.USD, "card3", "Donation");
+
+        given(cardPaymentCharger.chargeCardAsync(eq("card1"), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+        given(cardPaymentCharger.chargeCardAsync(eq("card2"), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(false)));
+
+        //when
+        List<PaymentChargeResult> results = underTest.chargeCards(List.of(
+                new PaymentRequest(charged),
+                new PaymentRequest(notDebited),
+                new PaymentRequest(unsupportedCurrency),
+                new PaymentRequest(unknownCustomer)
+        ));
+
+        //then
+        assertThat(results)
+                .extracting(PaymentChargeResult::getStatus)
+                .containsExactly(
+                        PaymentChargeResult.Status.CHARGED,
+                        PaymentChargeResult.Status.CARD_NOT_DEBITED,
+                        PaymentChargeResult.Status.CURRENCY_NOT_SUPPORTED,
+                        PaymentChargeResult.Status.CUSTOMER_NOT_FOUND);
+
+        then(customerExistenceChecker).should(never()).exists(any());
+        then(paymentWriter).should().writeAll(List.of(charged));
+        then(paymentWriter).should(never()).write(any(Payment.class));
+    }
+
+    @Test
+    void itShouldReportFailedChargesInBatch() {
+        //given an existing customer
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceChecker.selectExisting(Set.of(customerId))).willReturn(Set.of(customerId));
+
+        //charger blows up
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("Cannot make stripe charge")));
+
+        //when
+        List<PaymentChargeResult> results = underTest.chargeCards(List.of(new PaymentRequest(
+                new Payment(null, customerId, new BigDecimal("10.00"), Currency.USD, "card1", "Donation"))));
+
+        //then
+        assertThat(results)
+                .extracting(PaymentChargeResult::getStatus)
+                .containsExactly(PaymentChargeResult.Status.CHARGE_FAILED);
+        then(paymentWriter).should(never()).writeAll(anyList());
+    }
+
+    @Test
+    void itShouldChargeCardAsynchronously() {
+        //given
+        UUID customerId = UUID.randomUUID();
+
+        //customer exists
+        given(customerExistenceChecker.exists(customerId)).willReturn(true);
+
+        //payment request
+        PaymentRequest paymentRequest = new PaymentRequest(new Payment(
+                null,
+                null,
+                new BigDecimal("100.00"),
+                Currency.USD,
+                "card123xx",
+                "Donation"
+        ));
+
+        //provider has not answered yet
+        CompletableFuture<CardPaymentCharge> pendingCharge = new CompletableFuture<>();
+        given(cardPaymentCharger.chargeCardAsync(
+                paymentRequest.getPayment().getSource(),
+                paymentRequest.getPayment().getAmount(),
+                paymentRequest.getPayment().getDescription()
+        )).willReturn(pendingCharge);
+
+        //when
+        CompletableFuture<Void> payment = underTest.chargeCardAsync(customerId, paymentRequest);
+
+        //then nothing is stored until the card is debited
+        assertThat(payment).isNotDone();
+        then(paymentWriter).shouldHaveNoInteractions();
+
+        pendingCharge.complete(new CardPaymentCharge(true));
+
+        assertThat(payment).isCompleted();
+        then(paymentWriter).should().write(paymentRequest.getPayment());
+        assertThat(paymentRequest.getPayment().getCustomerId()).isEqualTo(customerId);
+    }
+
+    @Test
+    void itShouldFailAsynchronousChargeWhenCardIsNotCharged() {
+        //given
+        UUID customerId = UUID.randomUUID();
+
+        //customer exists
+        given(customerExistenceChecker.exists(customerId)).willReturn(true);
+
+        //card is not debited
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(false)));
+
+        //when
+        CompletableFuture<Void> payment = underTest.chargeCardAsync(customerId, new PaymentRequest(new Payment(
+                null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation")));
+
+        //then
+        assertThatThrownBy(payment::join)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(String.format("Card not debited for customer [%s]", customerId));
+        then(paymentWriter).should(never()).write(any(Payment.class));
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import com.amigoscode.testing.customer.Customer;
 import com.amigoscode.testing.customer.CustomerRegistrationController;
 import com.amigoscode.testing.customer.CustomerRegistrationRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,16 +12,21 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -42,7 +48,7 @@ class PaymentsIntegrationTest {
 
         //Given a cystomer
         UUID customerId = UUID.randomUUID();
-        Customer customer = new Customer(customerId, "James", "+440000000");
+        Customer customer = new Customer(customerId, "James", "+447000000000");
         CustomerRegistrationRequest customerRegistrationRequest = new CustomerRegistrationRequest(customer);
 
         //register
@@ -65,23 +71,190 @@ class PaymentsIntegrationTest {
         PaymentRequest paymentRequest = new PaymentRequest(payment);
 
         //when payment is sent
-        ResultActions paymentRegResultActions = mockMvc.perform(post("/api/v1/payment")
+        MvcResult paymentMvcResult = mockMvc.perform(post("/api/v1/payment")
                 .contentType(MediaType.APPLICATION_JSON)
-                .content(Objects.requireNonNull(objectToJson(paymentRequest))));
+                .content(Objects.requireNonNull(objectToJson(paymentRequest))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //the charge completes asynchronously
+        ResultActions paymentRegResultActions = mockMvc.perform(asyncDispatch(paymentMvcResult));
 
         //then both customer register and payment requests are 200
         paymentRegResultActions.andExpect(status().isOk());
         customerRegResultActions.andExpect(status().isOk());
 
-        //payment is stored in db
-        //TODO do not use payment repository. Instead create an endpoint to retrieve payments for customers
-        assertThat(paymentRepository.findById(paymentId))
-                .isPresent()
-                .hasValueSatisfying(p -> assertThat(p).isEqualToComparingFieldByField(payment));
+        //payment is stored in db and listed for the customer
+        MvcResult historyMvcResult = mockMvc.perform(get("/api/v1/payment").param("customerId", customerId.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String history = mockMvc.perform(asyncDispatch(historyMvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode payments = new ObjectMapper().readTree(history);
+        assertThat(payments).hasSize(1);
+        assertThat(payments.get(0).get("paymentId").isNumber()).isTrue();
+        assertThat(payments.get(0).get("amount").decimalValue()).isEqualByComparingTo(payment.getAmount().toBigDecimal());
+        assertThat(payments.get(0).get("currency").asText()).isEqualTo(payment.getAmount().getCurrency().name());
+        assertThat(payments.get(0).get("description").asText()).isEqualTo(payment.getDescription());
+
+        //and counted in the customer's totals
+        String totals = mockMvc.perform(get("/api/v1/payment-totals").param("customerId", customerId.toString()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode gbpTotal = new ObjectMapper().readTree(totals).get(0);
+        assertThat(gbpTotal.get("currency").asText()).isEqualTo("GBP");
+        assertThat(gbpTotal.get("totalAmount").decimalValue()).isEqualByComparingTo(payment.getAmount().toBigDecimal());
+        assertThat(gbpTotal.get("paymentCount").asLong()).isEqualTo(1);
 
         //TODO ensure sms is delivered
     }
 
+    @Test
+    void itShouldNotChargeTwiceWhenPaymentIsRetriedWithSameIdempotencyKey() throws Exception {
+        //Given a customer
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer(customerId, "Ali", "+447000000001");
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/customer-registration")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(Objects.requireNonNull(objectToJson(new CustomerRegistrationRequest(customer)))))
+                .andExpect(status().isOk());
+
+        //payment request
+        PaymentRequest paymentRequest = new PaymentRequest(new Payment(
+                null,
+                customerId,
+                new BigDecimal("50.00"),
+                Currency.USD, "x1x1x1x1",
+                "sadaqah"));
+        long paymentsBefore = paymentRepository.count();
+
+        //when the payment is sent twice with the same key
+        for (int attempt = 0; attempt < 2; attempt++) {
+            MvcResult mvcResult = mockMvc.perform(post("/api/v1/payment")
+                    .header("Idempotency-Key", "retry-" + customerId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(Objects.requireNonNull(objectToJson(paymentRequest))))
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+        }
+
+        //then only one payment is stored
+        assertThat(paymentRepository.count()).isEqualTo(paymentsBefore + 1);
+
+        //and the key cannot be reused for another amount
+        PaymentRequest otherPayment = new PaymentRequest(new Payment(
+                null,
+                customerId,
+                new BigDecimal("75.00"),
+                Currency.USD, "x1x1x1x1",
+                "sadaqah"));
+        MvcResult reused = mockMvc.perform(post("/api/v1/payment")
+                .header("Idempotency-Key", "retry-" + customerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(Objects.requireNonNull(objectToJson(otherPayment))))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(reused)).andExpect(status().isUnprocessableEntity());
+        assertThat(paymentRepository.count()).isEqualTo(paymentsBefore + 1);
+    }
+
+    @Test
+    void itShouldRejectUnsupportedCurrencyBeforeLookingUpCustomer() throws Exception {
+        //Given a payment in a currency no segment accepts, for a customer that does not exist
+        PaymentRequest paymentRequest = new PaymentRequest(new Payment(
+                null,
+                UUID.randomUUID(),
+                new BigDecimal("10.00"),
+                Currency.EUR, "x2x2x2x2",
+                "zakat"));
+
+        //when it is sent it is refused before the payment starts
+        mockMvc.perform(post("/api/v1/payment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(Objects.requireNonNull(objectToJson(paymentRequest))))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void itShouldReportUnsupportedCurrencyPerRowOfBatch() throws Exception {
+        //Given a customer
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer(customerId, "Aisha", "+447000000003");
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/customer-registration")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(Objects.requireNonNull(objectToJson(new CustomerRegistrationRequest(customer)))))
+                .andExpect(status().isOk());
+
+        //and a batch with one payment in a currency no segment accepts
+        List<PaymentRequest> paymentRequests = List.of(
+                new PaymentRequest(new Payment(null, customerId, new BigDecimal("10.00"), Currency.GBP, "x3x3x3x3", "zakat")),
+                new PaymentRequest(new Payment(null, customerId, new BigDecimal("10.00"), Currency.EUR, "x3x3x3x3", "zakat")));
+
+        //when
+        String response = mockMvc.perform(post("/api/v1/payment/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(Objects.requireNonNull(objectToJson(paymentRequests))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        //then only that row is refused
+        JsonNode results = new ObjectMapper().readTree(response);
+        assertThat(results.get(0).get("status").asText()).isEqualTo("CHARGED");
+        assertThat(results.get(1).get("status").asText()).isEqualTo("CURRENCY_NOT_SUPPORTED");
+    }
+
+    @Test
+    void itShouldTakeSegmentOnlyCurrencyFromCustomersInThatSegment() throws Exception {
+        //Given two customers, one of them a vip
+        UUID vipCustomerId = UUID.randomUUID();
+        UUID customerId = UUID.randomUUID();
+        for (Customer customer : List.of(new Customer(vipCustomerId, "Hamza", "+447000000005"),
+                new Customer(customerId, "Zainab", "+447000000006"))) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/customer-registration")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(Objects.requireNonNull(objectToJson(new CustomerRegistrationRequest(customer)))))
+                    .andExpect(status().isOk());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/currency-policy/customers/" + vipCustomerId)
+                .contentType(MediaType.TEXT_PLAIN)
+                .content("vip"))
+                .andExpect(status().isOk());
+
+        //and EUR taken from vips only
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/currency-policy/vip")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"EUR\"]"))
+                .andExpect(status().isOk());
+        try {
+            //then the vip can pay in EUR
+            MvcResult vipPayment = mockMvc.perform(post("/api/v1/payment")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(Objects.requireNonNull(objectToJson(new PaymentRequest(new Payment(
+                            null, vipCustomerId, new BigDecimal("10.00"), Currency.EUR, "x4x4x4x4", "zakat"))))))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(vipPayment)).andExpect(status().isOk());
+
+            //and the other customer is told the currency is not supported
+            mockMvc.perform(post("/api/v1/payment")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(Objects.requireNonNull(objectToJson(new PaymentRequest(new Payment(
+                            null, customerId, new BigDecimal("10.00"), Currency.EUR, "x4x4x4x4", "zakat"))))))
+                    .andExpect(status().isBadRequest());
+        } finally {
+            mockMvc.perform(post("/api/v1/currency-policy/reload")).andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    void itShouldRejectUnknownCurrencyInPolicy() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/api/v1/currency-policy/eu")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"EUR\", \"XYZ\"]"))
+                .andExpect(status().isBadRequest());
+    }
+
     private String objectToJson(Object object) {
         try {
             return new ObjectMapper().writeValueAsString(object);
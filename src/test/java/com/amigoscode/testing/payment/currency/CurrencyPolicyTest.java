@@ -0,0 +1,93 @@
+package com.amigoscode.testing.payment.currency;
+
+import com.amigoscode.testing.payment.Currency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CurrencyPolicyTest {
+
+    @TempDir Path directory;
+    private CurrencyPolicy underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CurrencyPolicy(Map.of(
+                CurrencyPolicy.DEFAULT_SEGMENT, EnumSet.of(Currency.USD, Currency.GBP),
+                "eu", EnumSet.of(Currency.EUR)));
+    }
+
+    @Test
+    void itShouldAcceptCurrenciesOfSegment() {
+        assertThat(underTest.isAccepted(Currency.GBP)).isTrue();
+        assertThat(underTest.isAccepted(Currency.EUR)).isFalse();
+        assertThat(underTest.isAccepted("eu", Currency.EUR)).isTrue();
+        assertThat(underTest.isAccepted("eu", Currency.GBP)).isFalse();
+        assertThat(underTest.isAcceptedByAnySegment(Currency.EUR)).isTrue();
+        assertThat(underTest.isAccepted(null)).isFalse();
+    }
+
+    @Test
+    void itShouldFallBackToDefaultForUnknownSegment() {
+        assertThat(underTest.isAccepted("retail", Currency.USD)).isTrue();
+        assertThat(underTest.isAccepted("retail", Currency.EUR)).isFalse();
+    }
+
+    @Test
+    void itShouldApplyChangesUntilReloaded() {
+        //when
+        underTest.accept(CurrencyPolicy.DEFAULT_SEGMENT, EnumSet.of(Currency.EUR));
+
+        //then
+        assertThat(underTest.isAccepted(Currency.EUR)).isTrue();
+        assertThat(underTest.isAccepted(Currency.USD)).isFalse();
+        assertThat(underTest.getAcceptedCurrencies())
+                .containsEntry(CurrencyPolicy.DEFAULT_SEGMENT, EnumSet.of(Currency.EUR));
+
+        //and when
+        underTest.reload();
+
+        //then
+        assertThat(underTest.isAccepted(Currency.USD)).isTrue();
+        assertThat(underTest.isAccepted(Currency.EUR)).isFalse();
+    }
+
+    @Test
+    void itShouldReadPolicyFileAgainOnReload() throws IOException {
+        //given a policy file that overrides part of the configuration
+        Path file = directory.resolve("currency-policy.properties");
+        Files.writeString(file, "payment.currencies.accepted.eu=EUR\n");
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("payment.currencies.accepted.default", "USD,GBP")
+                .withProperty("payment.currencies.accepted.eu", "GBP");
+        CurrencyPolicy policy = new CurrencyPolicy(environment, new DefaultResourceLoader(), file.toUri().toString());
+        assertThat(policy.isAccepted("eu", Currency.EUR)).isTrue();
+        assertThat(policy.isAccepted(Currency.USD)).isTrue();
+
+        //when the file is edited
+        Files.writeString(file, "payment.currencies.accepted.default=GBP\npayment.currencies.accepted.eu=EUR,GBP\n");
+        policy.reload();
+
+        //then
+        assertThat(policy.isAccepted(Currency.USD)).isFalse();
+        assertThat(policy.isAccepted("eu", Currency.GBP)).isTrue();
+    }
+
+    @Test
+    void itShouldRequireDefaultSegment() {
+        assertThatThrownBy(() -> new CurrencyPolicy(Map.of("eu", EnumSet.of(Currency.EUR))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(CurrencyPolicy.PROPERTY);
+    }
+}
@@ -0,0 +1,151 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class IdempotencyServiceTest {
+
+    private InMemoryIdempotencyStore idempotencyStore;
+    private IdempotencyService underTest;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2020-01-01T00:00:00Z"), ZoneOffset.UTC);
+        idempotencyStore = new InMemoryIdempotencyStore(Duration.ofHours(24), clock);
+        underTest = new IdempotencyService(idempotencyStore);
+    }
+
+    @Test
+    void itShouldCoalesceConcurrentDuplicatesOntoFirstPayment() {
+        //given a payment still in flight
+        AtomicInteger payments = new AtomicInteger();
+        CompletableFuture<Void> pendingPayment = new CompletableFuture<>();
+
+        //when the same key is sent twice
+        CompletableFuture<Void> first = underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return pendingPayment;
+        });
+        CompletableFuture<Void> duplicate = underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        //then the duplicate waits for the first payment
+        assertThat(duplicate).isNotDone();
+        pendingPayment.complete(null);
+
+        assertThat(first).isCompleted();
+        assertThat(duplicate).isCompleted();
+        assertThat(payments).hasValue(1);
+    }
+
+    @Test
+    void itShouldNotRunCompletedPaymentAgain() {
+        //given
+        AtomicInteger payments = new AtomicInteger();
+        underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        //when
+        CompletableFuture<Void> retry = underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        //then
+        assertThat(retry).isCompleted();
+        assertThat(payments).hasValue(1);
+    }
+
+    @Test
+    void itShouldRunPaymentAgainAfterFailure() {
+        //given a failed payment
+        CompletableFuture<Void> failed = underTest.execute("key-1", "fp",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("Card not debited")));
+
+        //when
+        AtomicInteger payments = new AtomicInteger();
+        CompletableFuture<Void> retry = underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        //then
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(retry).isCompleted();
+        assertThat(payments).hasValue(1);
+    }
+
+    @Test
+    void itShouldRejectKeyReusedForAnotherPayment() {
+        //given
+        AtomicInteger payments = new AtomicInteger();
+        underTest.execute("key-1", "fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }).join();
+
+        //when
+        CompletableFuture<Void> reused = underTest.execute("key-1", "other-fp", () -> {
+            payments.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        //then
+        assertThatThrownBy(reused::join)
+                .hasCauseInstanceOf(IdempotencyKeyReusedException.class)
+                .hasMessageContaining("Idempotency key [key-1] was already used for a different payment");
+        assertThat(payments).hasValue(1);
+    }
+
+    @Test
+    void itShouldRejectKeyReusedWhileFirstPaymentIsInFlight() {
+        //given
+        underTest.execute("key-1", "fp", CompletableFuture::new);
+
+        //when
+        CompletableFuture<Void> reused = underTest.execute("key-1", "other-fp",
+                () -> CompletableFuture.completedFuture(null));
+
+        //then
+        assertThatThrownBy(reused::join).hasCauseInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void itShouldFingerprintEachPartSeparately() {
+        //then
+        assertThat(IdempotencyService.fingerprint("a", "bc")).isEqualTo(IdempotencyService.fingerprint("a", "bc"));
+        assertThat(IdempotencyService.fingerprint("a", "bc")).isNotEqualTo(IdempotencyService.fingerprint("ab", "c"));
+    }
+
+    @Test
+    void itShouldRejectKeyInFlightOnAnotherInstance() {
+        //given
+        IdempotencyStore sharedStore = mock(IdempotencyStore.class);
+        given(sharedStore.begin("key-1", "fp")).willReturn(IdempotencyKeyState.IN_FLIGHT);
+        IdempotencyService service = new IdempotencyService(sharedStore);
+
+        //when
+        CompletableFuture<Void> payment = service.execute("key-1", "fp", () -> CompletableFuture.completedFuture(null));
+
+        //then
+        assertThatThrownBy(payment::join)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Payment with idempotency key [key-1] is already in progress");
+    }
+}
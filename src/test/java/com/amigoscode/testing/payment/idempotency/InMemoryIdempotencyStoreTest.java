@@ -0,0 +1,104 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryIdempotencyStoreTest {
+
+    private MutableClock clock;
+    private InMemoryIdempotencyStore underTest;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+        underTest = new InMemoryIdempotencyStore(Duration.ofHours(24), clock);
+    }
+
+    @Test
+    void itShouldTrackStateOfKey() {
+        //when
+        IdempotencyKeyState first = underTest.begin("key-1", "fp");
+        IdempotencyKeyState duplicate = underTest.begin("key-1", "fp");
+        underTest.complete("key-1");
+        IdempotencyKeyState retry = underTest.begin("key-1", "fp");
+
+        //then
+        assertThat(first).isEqualTo(IdempotencyKeyState.NEW);
+        assertThat(duplicate).isEqualTo(IdempotencyKeyState.IN_FLIGHT);
+        assertThat(retry).isEqualTo(IdempotencyKeyState.COMPLETED);
+    }
+
+    @Test
+    void itShouldRejectKeyReusedForAnotherPayment() {
+        //given
+        underTest.begin("key-1", "fp");
+
+        //then
+        assertThatThrownBy(() -> underTest.begin("key-1", "other-fp"))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void itShouldEvictExpiredKeys() {
+        //given
+        underTest.begin("key-1", "fp");
+        underTest.complete("key-1");
+
+        //when
+        clock.advance(Duration.ofHours(25));
+        underTest.begin("key-2", "fp");
+        underTest.evictExpired();
+
+        //then
+        assertThat(underTest.size()).isEqualTo(1);
+        assertThat(underTest.begin("key-1", "fp")).isEqualTo(IdempotencyKeyState.NEW);
+    }
+
+    @Test
+    void itShouldTakeOverExpiredKeyBeforeSweep() {
+        //given
+        underTest.begin("key-1", "fp");
+
+        //when
+        clock.advance(Duration.ofHours(25));
+
+        //then
+        assertThat(underTest.begin("key-1", "fp")).isEqualTo(IdempotencyKeyState.NEW);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
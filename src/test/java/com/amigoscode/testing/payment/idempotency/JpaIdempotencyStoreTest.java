@@ -0,0 +1,112 @@
+package com.amigoscode.testing.payment.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//not transactional, a duplicate key has to fail its own insert without rolling back the test
+@DataJpaTest(properties = {
+        "spring.jpa.properties.javax.persistence.validation.mode=none"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaIdempotencyStoreTest {
+
+    @Autowired private IdempotencyRecordRepository idempotencyRecordRepository;
+    private JpaIdempotencyStore underTest;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyRecordRepository.deleteAll();
+        Clock clock = Clock.fixed(Instant.parse("2020-01-01T00:00:00Z"), ZoneOffset.UTC);
+        underTest = new JpaIdempotencyStore(idempotencyRecordRepository, Duration.ofHours(24), Duration.ofMinutes(5), clock);
+    }
+
+    @Test
+    void itShouldTrackStateOfKey() {
+        //when
+        IdempotencyKeyState first = underTest.begin("key-1", "fp");
+        IdempotencyKeyState duplicate = underTest.begin("key-1", "fp");
+        underTest.complete("key-1");
+        IdempotencyKeyState retry = underTest.begin("key-1", "fp");
+
+        //then
+        assertThat(first).isEqualTo(IdempotencyKeyState.NEW);
+        assertThat(duplicate).isEqualTo(IdempotencyKeyState.IN_FLIGHT);
+        assertThat(retry).isEqualTo(IdempotencyKeyState.COMPLETED);
+    }
+
+    @Test
+    void itShouldForgetReleasedKey() {
+        //given
+        underTest.begin("key-1", "fp");
+
+        //when
+        underTest.release("key-1");
+
+        //then
+        assertThat(underTest.begin("key-1", "fp")).isEqualTo(IdempotencyKeyState.NEW);
+    }
+
+    @Test
+    void itShouldRejectKeyReusedForAnotherPayment() {
+        //given
+        underTest.begin("key-1", "fp");
+        underTest.complete("key-1");
+
+        //then
+        assertThatThrownBy(() -> underTest.begin("key-1", "other-fp"))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void itShouldAcceptAnyPaymentForKeyStoredWithoutFingerprint() {
+        //given a key stored before fingerprints were kept
+        idempotencyRecordRepository.insertInFlight("key-1", null, Instant.parse("2020-01-01T00:00:00Z"));
+        underTest.complete("key-1");
+
+        //then
+        assertThat(underTest.begin("key-1", "fp")).isEqualTo(IdempotencyKeyState.COMPLETED);
+    }
+
+    @Test
+    void itShouldTakeOverKeyInFlightLongerThanLease() {
+        //given a key claimed ten minutes ago by an instance that never finished
+        Clock past = Clock.fixed(Instant.parse("2019-12-31T23:50:00Z"), ZoneOffset.UTC);
+        new JpaIdempotencyStore(idempotencyRecordRepository, Duration.ofHours(24), Duration.ofMinutes(5), past)
+                .begin("key-1", "fp");
+
+        //when
+        IdempotencyKeyState first = underTest.begin("key-1", "fp");
+        IdempotencyKeyState duplicate = underTest.begin("key-1", "fp");
+
+        //then
+        assertThat(first).isEqualTo(IdempotencyKeyState.NEW);
+        assertThat(duplicate).isEqualTo(IdempotencyKeyState.IN_FLIGHT);
+    }
+
+    @Test
+    void itShouldEvictExpiredKeys() {
+        //given a key created two days ago
+        Clock past = Clock.fixed(Instant.parse("2019-12-30T00:00:00Z"), ZoneOffset.UTC);
+        new JpaIdempotencyStore(idempotencyRecordRepository, Duration.ofHours(24), Duration.ofMinutes(5), past).begin("key-1", "fp");
+        underTest.begin("key-2", "fp");
+
+        //when
+        underTest.evictExpired();
+
+        //then
+        assertThat(idempotencyRecordRepository.findById("key-1")).isNotPresent();
+        assertThat(idempotencyRecordRepository.findById("key-2")).isPresent();
+    }
+}
@@ -0,0 +1,101 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotalRepository;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//not transactional, the writer commits each drained batch together with its checkpoint.
+//the extra property gives the test a context and database of its own, so the payment ids it draws
+//do not shift the ids other repository tests expect
+@DataJpaTest(properties = {
+        "spring.jpa.properties.javax.persistence.validation.mode=none",
+        "payment.journal.enabled=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JournalingPaymentWriterTest {
+
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private PaymentJournalCheckpointRepository checkpointRepository;
+    @Autowired private CustomerPaymentTotalRepository customerPaymentTotalRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @TempDir Path directory;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        checkpointRepository.deleteAll();
+        customerPaymentTotalRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldWritePaymentsToTableWhenDrained() {
+        //given
+        JournalingPaymentWriter underTest = newWriter(2);
+        underTest.open();
+
+        //when
+        underTest.write(payment("first"));
+        underTest.writeAll(List.of(payment("second"), payment("third")));
+
+        //then nothing reaches the table until the journal is drained
+        assertThat(paymentRepository.count()).isZero();
+        underTest.drain();
+        assertThat(paymentRepository.findAll()).extracting(Payment::getDescription)
+                .containsExactlyInAnyOrder("first", "second", "third");
+
+        //and drained payments are not written again
+        underTest.drain();
+        assertThat(paymentRepository.count()).isEqualTo(3);
+        underTest.close();
+    }
+
+    @Test
+    void itShouldReplayJournalOnStartup() {
+        //given payments journaled by an instance that stopped before draining them
+        JournalingPaymentWriter crashed = newWriter(500);
+        crashed.open();
+        crashed.write(payment("first"));
+        crashed.drain();
+        crashed.write(payment("second"));
+
+        //when
+        JournalingPaymentWriter underTest = newWriter(500);
+        underTest.open();
+
+        //then
+        assertThat(paymentRepository.findAll()).extracting(Payment::getDescription)
+                .containsExactlyInAnyOrder("first", "second");
+        underTest.close();
+    }
+
+    private JournalingPaymentWriter newWriter(int batchSize) {
+        CustomerPaymentTotals customerPaymentTotals = new CustomerPaymentTotals(customerPaymentTotalRepository, paymentRepository,
+                jdbcTemplate, transactionManager);
+        return new JournalingPaymentWriter(paymentRepository, checkpointRepository, customerPaymentTotals, transactionManager,
+                directory, DataSize.ofKilobytes(64), false, batchSize);
+    }
+
+    private static Payment payment(String description) {
+        return new Payment(null, UUID.randomUUID(), new BigDecimal("100.00"), Currency.USD, "card123xx", description);
+    }
+}
@@ -0,0 +1,159 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaymentJournalTest {
+
+    @TempDir Path directory;
+
+    @Test
+    void itShouldReadAppendedPayments() {
+        //given
+        PaymentJournal underTest = new PaymentJournal(directory, 4096, false, 0);
+        Payment payment = payment("Donation");
+        Payment withoutDescription = new Payment(null, UUID.randomUUID(), new BigDecimal("0.5"), Currency.GBP, "card123xx", null);
+
+        //when
+        long first = underTest.append(payment);
+        long second = underTest.append(withoutDescription);
+        List<PaymentJournal.Entry> entries = underTest.read(0, 10);
+
+        //then
+        assertThat(entries).extracting(PaymentJournal.Entry::getPayment).containsExactly(payment, withoutDescription);
+        assertThat(entries).extracting(PaymentJournal.Entry::getNext).containsExactly(first, second);
+        assertThat(underTest.read(first, 10)).extracting(PaymentJournal.Entry::getPayment).containsExactly(withoutDescription);
+        assertThat(underTest.read(second, 10)).isEmpty();
+    }
+
+    @Test
+    void itShouldRollOverToNewSegmentWhenFull() throws IOException {
+        //given segments that only hold a couple of payments each
+        PaymentJournal underTest = new PaymentJournal(directory, 256, false, 0);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            underTest.append(payment("Donation " + i));
+        }
+
+        //then
+        assertThat(segmentFiles()).hasSizeGreaterThan(1);
+        List<PaymentJournal.Entry> entries = underTest.read(0, 100);
+        assertThat(entries).extracting(entry -> entry.getPayment().getDescription())
+                .containsExactly("Donation 0", "Donation 1", "Donation 2", "Donation 3", "Donation 4",
+                        "Donation 5", "Donation 6", "Donation 7", "Donation 8", "Donation 9");
+
+        //and segments already read can be dropped
+        underTest.deleteBefore(entries.get(9).getNext());
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(underTest.read(entries.get(9).getNext(), 100)).isEmpty();
+    }
+
+    @Test
+    void itShouldRecoverPaymentsAfterReopening() {
+        //given
+        PaymentJournal journal = new PaymentJournal(directory, 4096, false, 0);
+        long first = journal.append(payment("first"));
+        journal.append(payment("second"));
+
+        //when the process goes away without closing the journal
+        PaymentJournal underTest = new PaymentJournal(directory, 4096, false, 0);
+        underTest.append(payment("third"));
+
+        //then
+        assertThat(underTest.read(first, 10)).extracting(entry -> entry.getPayment().getDescription())
+                .containsExactly("second", "third");
+    }
+
+    @Test
+    void itShouldDiscardTornRecordWhenReopening() throws IOException {
+        //given the last record was only partly written
+        PaymentJournal journal = new PaymentJournal(directory, 4096, false, 0);
+        long first = journal.append(payment("first"));
+        long second = journal.append(payment("second"));
+        journal.close();
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            //positions carry the offset within the segment in their low bits
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), (int) second - 3);
+        }
+
+        //when
+        PaymentJournal underTest = new PaymentJournal(directory, 4096, false, 0);
+        long third = underTest.append(payment("third"));
+
+        //then
+        assertThat(underTest.read(0, 10)).extracting(entry -> entry.getPayment().getDescription())
+                .containsExactly("first", "third");
+        assertThat(third).isGreaterThan(first);
+    }
+
+    @Test
+    void itShouldKeepEveryForcedAppendFromConcurrentWriters() throws Exception {
+        //given
+        PaymentJournal journal = new PaymentJournal(directory, 1024, true, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        //when
+        List<Future<Long>> appends = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String description = "Donation " + i;
+            appends.add(executor.submit(() -> journal.append(payment(description))));
+        }
+        for (Future<Long> append : appends) {
+            append.get();
+        }
+        executor.shutdown();
+        journal.close();
+
+        //then all of them are there after reopening
+        PaymentJournal underTest = new PaymentJournal(directory, 1024, true, 0);
+        assertThat(underTest.read(0, 1000)).hasSize(100);
+    }
+
+    @Test
+    void itShouldRefuseAppendsAfterClose() {
+        //given
+        PaymentJournal underTest = new PaymentJournal(directory, 4096, true, 0);
+        underTest.append(payment("Donation"));
+
+        //when
+        underTest.close();
+
+        //then
+        assertThatThrownBy(() -> underTest.append(payment("Late donation")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Payment journal is closed");
+        assertThat(new PaymentJournal(directory, 4096, true, 0).read(0, 10)).hasSize(1);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Payment payment(String description) {
+        return new Payment(null, UUID.randomUUID(), new BigDecimal("100.00"), Currency.USD, "card123xx", description);
+    }
+}
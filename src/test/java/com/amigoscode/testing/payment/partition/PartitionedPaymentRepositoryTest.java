@@ -0,0 +1,125 @@
+package com.amigoscode.testing.payment.partition;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentHistoryEntry;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotal;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotalRepository;
+import com.amigoscode.testing.payment.totals.CustomerPaymentTotals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "payment.partitions.enabled=true",
+        "payment.partitions.urls=jdbc:h2:mem:payment-partition-0,jdbc:h2:mem:payment-partition-1,jdbc:h2:mem:payment-partition-2"
+})
+class PartitionedPaymentRepositoryTest {
+
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private PaymentPartitions paymentPartitions;
+    @Autowired private CustomerPaymentTotals customerPaymentTotals;
+    @Autowired private CustomerPaymentTotalRepository customerPaymentTotalRepository;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        customerPaymentTotalRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldKeepEachCustomersPaymentsInOnePartition() {
+        //given
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            UUID customerId = UUID.randomUUID();
+            payments.add(payment(customerId, "10.00"));
+            payments.add(payment(customerId, "2.50"));
+        }
+
+        //when
+        paymentRepository.saveAll(payments);
+
+        //then
+        assertThat(paymentRepository.count()).isEqualTo(60);
+        assertThat(paymentRepository.findAll()).hasSize(60);
+        for (int partition = 0; partition < paymentPartitions.size(); partition++) {
+            List<UUID> customerIds = paymentPartitions.jdbcTemplate(partition)
+                    .queryForList("select customer_id from payment", UUID.class);
+            assertThat(customerIds).isNotEmpty();
+            for (UUID customerId : customerIds) {
+                assertThat(paymentPartitions.partitionOf(customerId)).isEqualTo(partition);
+            }
+        }
+        Payment first = payments.get(0);
+        assertThat(paymentRepository.findById(first.getPaymentId()))
+                .hasValueSatisfying(found -> assertThat(found).isEqualTo(first));
+    }
+
+    @Test
+    void itShouldPageCustomerHistoryInPaymentIdOrder() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        paymentRepository.saveAll(List.of(payment(customerId, "1.00"), payment(customerId, "2.00"),
+                payment(customerId, "3.00"), payment(UUID.randomUUID(), "4.00")));
+
+        //when
+        List<PaymentHistoryEntry> firstPage = paymentRepository.selectPaymentHistory(customerId, 0, PageRequest.of(0, 2));
+        List<PaymentHistoryEntry> secondPage = paymentRepository.selectPaymentHistory(
+                customerId, firstPage.get(1).getPaymentId(), PageRequest.of(0, 2));
+
+        //then
+        assertThat(firstPage).extracting(entry -> entry.getAmount().toBigDecimal())
+                .containsExactly(new BigDecimal("1.00"), new BigDecimal("2.00"));
+        assertThat(secondPage).extracting(entry -> entry.getAmount().toBigDecimal())
+                .containsExactly(new BigDecimal("3.00"));
+    }
+
+    @Test
+    void itShouldRebuildTotalsFromEveryPartition() {
+        //given
+        List<UUID> customerIds = new ArrayList<>();
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            UUID customerId = UUID.randomUUID();
+            customerIds.add(customerId);
+            payments.add(payment(customerId, "10.00"));
+            payments.add(payment(customerId, "2.50"));
+        }
+        paymentRepository.saveAll(payments);
+
+        //when
+        customerPaymentTotals.rebuild();
+
+        //then
+        for (UUID customerId : customerIds) {
+            List<CustomerPaymentTotal> totals = customerPaymentTotals.selectCustomerPaymentTotals(customerId);
+            assertThat(totals).hasSize(1);
+            assertThat(totals.get(0).getTotalAmount()).isEqualByComparingTo("12.50");
+            assertThat(totals.get(0).getPaymentCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void itShouldNotStartWithPaymentJournal() {
+        assertThatThrownBy(() -> new PaymentPartitionConfig().paymentPartitions(
+                new String[]{"jdbc:h2:mem:payment-partition-journal"}, "sa", "", 1, true))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("payment.partitions.enabled and payment.journal.enabled cannot both be set");
+    }
+
+    private static Payment payment(UUID customerId, String amount) {
+        return new Payment(null, customerId, new BigDecimal(amount), Currency.GBP, "card123", "donation");
+    }
+}
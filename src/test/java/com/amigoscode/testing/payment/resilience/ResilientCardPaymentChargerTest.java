@@ -0,0 +1,165 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.CardPaymentCharger;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.amigoscode.testing.payment.stripe.StripeBulkheadRejectedException;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.CardException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.times;
+
+class ResilientCardPaymentChargerTest {
+
+    private static final Money AMOUNT = Money.ofMinor(1000L, Currency.USD);
+
+    @Mock private CardPaymentCharger delegate;
+
+    private CircuitBreaker circuitBreaker;
+    private ScheduledExecutorService retryScheduler;
+    private ResilientCardPaymentCharger underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        circuitBreaker = CircuitBreaker.of("test", CircuitBreakerConfig.custom()
+                .slidingWindow(4, 4, CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMillis(50))
+                .permittedNumberOfCallsInHalfOpenState(1)
+                .ignoreException(ChargeFailures::isCallerError)
+                .build());
+        Retry retry = Retry.of("test", RetryConfig.custom()
+                .maxAttempts(3)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(Duration.ofMillis(10), 2, 0.5))
+                .retryOnException(ChargeFailures::isRetryable)
+                .build());
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        underTest = new ResilientCardPaymentCharger(delegate, circuitBreaker, retry, retryScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retryScheduler.shutdownNow();
+    }
+
+    @Test
+    void itShouldRetryConnectionFailureWithSameIdempotencyKey() {
+        //given the provider cannot be reached once
+        given(delegate.chargeCard(eq("card"), eq(AMOUNT), eq("Zakat"), anyString()))
+                .willThrow(chargeFailure(new ApiConnectionException("connection reset")))
+                .willReturn(new CardPaymentCharge(true));
+
+        //when
+        CardPaymentCharge charge = underTest.chargeCard("card", AMOUNT, "Zakat");
+
+        //then
+        assertThat(charge.isCardDebited()).isTrue();
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        then(delegate).should(times(2)).chargeCard(eq("card"), eq(AMOUNT), eq("Zakat"), keys.capture());
+        assertThat(keys.getAllValues().get(0)).isNotNull().isEqualTo(keys.getAllValues().get(1));
+    }
+
+    @Test
+    void itShouldNotRetryDeclinedCard() {
+        //given
+        given(delegate.chargeCard(any(), any(), any(), any()))
+                .willThrow(chargeFailure(new CardException("declined", "req", "card_declined", null, null, null, 402, null)));
+
+        //when
+        assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "Zakat", "key-1"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(CardException.class);
+
+        //then
+        then(delegate).should(times(1)).chargeCard("card", AMOUNT, "Zakat", "key-1");
+        assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isZero();
+    }
+
+    @Test
+    void itShouldNotRetryChargeShedByBulkhead() {
+        //given
+        given(delegate.chargeCard(any(), any(), any(), any()))
+                .willThrow(chargeFailure(new StripeBulkheadRejectedException("Stripe bulkhead full")));
+
+        //when
+        assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "Zakat", "key-1"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(StripeBulkheadRejectedException.class);
+
+        //then
+        then(delegate).should(times(1)).chargeCard("card", AMOUNT, "Zakat", "key-1");
+        assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldRetryAsynchronousCharge() {
+        //given
+        given(delegate.chargeCardAsync(eq("card"), eq(AMOUNT), eq("Zakat"), eq("key-1")))
+                .willReturn(CompletableFuture.failedFuture(chargeFailure(new ApiConnectionException("timeout"))))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+
+        //when
+        CardPaymentCharge charge = underTest.chargeCardAsync("card", AMOUNT, "Zakat", "key-1").join();
+
+        //then
+        assertThat(charge.isCardDebited()).isTrue();
+        then(delegate).should(times(2)).chargeCardAsync("card", AMOUNT, "Zakat", "key-1");
+    }
+
+    @Test
+    void itShouldFailFastWhenOpenAndCloseAfterProbe() throws InterruptedException {
+        //given the provider keeps failing until the breaker opens
+        given(delegate.chargeCard(any(), any(), any(), any()))
+                .willThrow(chargeFailure(new ApiConnectionException("connection refused")));
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "Zakat"))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        //when
+        assertThatThrownBy(() -> underTest.chargeCardAsync("card", AMOUNT, "Zakat").join())
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("circuit is open");
+
+        //then no call reached the provider while open
+        then(delegate).should(times(4)).chargeCard(any(), any(), any(), any());
+        then(delegate).should(times(0)).chargeCardAsync(any(), any(), any(), any());
+
+        //and once the provider recovers a probe closes the breaker again
+        Thread.sleep(100);
+        willReturn(new CardPaymentCharge(true)).given(delegate).chargeCard(any(), any(), any(), any());
+        assertThat(underTest.chargeCard("card", AMOUNT, "Zakat").isCardDebited()).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private static IllegalStateException chargeFailure(Exception cause) {
+        return new IllegalStateException("Cannot make stripe charge", cause);
+    }
+}
@@ -0,0 +1,129 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.RateLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class SimulatedStripeHttpClientTest {
+
+    private static final Money AMOUNT = Money.ofMinor(1000L, Currency.USD);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<StripeHttpClient> clients = new ArrayList<>();
+    private final List<StripeService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(StripeService::shutdown);
+        clients.forEach(StripeHttpClient::close);
+    }
+
+    @Test
+    void itShouldDrawSameOutcomesForSameSeed() {
+        //given
+        StripeSimulation first = simulation(7, 0.1, 0.1, 0.1);
+        StripeSimulation second = simulation(7, 0.1, 0.1, 0.1);
+
+        //then
+        for (int i = 0; i < 1_000; i++) {
+            StripeSimulation.Outcome expected = first.next();
+            StripeSimulation.Outcome actual = second.next();
+            assertThat(actual.getKind()).isEqualTo(expected.getKind());
+            assertThat(actual.getLatencyNanos()).isEqualTo(expected.getLatencyNanos());
+        }
+    }
+
+    @Test
+    void itShouldMatchConfiguredLatencyPercentilesAndRates() {
+        //given p50 of 300ms and p99 of 1.5s
+        StripeSimulation underTest = simulation(42, 0.02, 0.01, 0.005);
+        int charges = 200_000;
+        long[] paidLatencies = new long[charges];
+        int paid = 0;
+        Map<StripeSimulation.Kind, Integer> kinds = new EnumMap<>(StripeSimulation.Kind.class);
+
+        //when
+        for (int i = 0; i < charges; i++) {
+            StripeSimulation.Outcome outcome = underTest.next();
+            kinds.merge(outcome.getKind(), 1, Integer::sum);
+            if (outcome.getKind() == StripeSimulation.Kind.PAID) {
+                paidLatencies[paid++] = outcome.getLatencyNanos();
+            }
+        }
+
+        //then
+        long[] sorted = Arrays.copyOf(paidLatencies, paid);
+        Arrays.sort(sorted);
+        assertThat(sorted[(int) (paid * 0.50)] / 1e6).isCloseTo(300, within(10.0));
+        assertThat(sorted[(int) (paid * 0.99)] / 1e6).isCloseTo(1_500, within(100.0));
+        assertThat(kinds.get(StripeSimulation.Kind.DECLINED) / (double) charges).isCloseTo(0.02, within(0.002));
+        assertThat(kinds.get(StripeSimulation.Kind.RATE_LIMITED) / (double) charges).isCloseTo(0.01, within(0.002));
+        assertThat(kinds.get(StripeSimulation.Kind.TIMED_OUT) / (double) charges).isCloseTo(0.005, within(0.002));
+    }
+
+    @Test
+    void itShouldTimeOutChargesSlowerThanTimeout() {
+        //given a provider whose median is past the timeout
+        StripeSimulation underTest = new StripeSimulation(1, Duration.ofSeconds(10), Duration.ofSeconds(20),
+                0, 0, 0, Duration.ofSeconds(1));
+
+        //then
+        for (int i = 0; i < 100; i++) {
+            StripeSimulation.Outcome outcome = underTest.next();
+            if (outcome.getKind() != StripeSimulation.Kind.TIMED_OUT) {
+                assertThat(outcome.getLatencyNanos()).isLessThan(Duration.ofSeconds(1).toNanos());
+            }
+        }
+    }
+
+    @Test
+    void itShouldAnswerLikeStripeThroughStripeService() {
+        assertThatThrownBy(() -> service(1, 0, 0).chargeCard("card", AMOUNT, "Zakat"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Cannot make stripe charge")
+                .hasCauseInstanceOf(CardException.class);
+        assertThatThrownBy(() -> service(0, 1, 0).chargeCardAsync("card", AMOUNT, "Zakat").join())
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(RateLimitException.class);
+        assertThatThrownBy(() -> service(0, 0, 1).chargeCard("card", AMOUNT, "Zakat"))
+                .hasCauseInstanceOf(ApiConnectionException.class);
+        assertThat(service(0, 0, 0).chargeCardAsync("card", AMOUNT, "Zakat").join().isCardDebited()).isTrue();
+
+        //and every call went through the client's bulkhead and metrics
+        assertThat(meterRegistry.get("stripe.http.requests").timer().count()).isEqualTo(4);
+        assertThat(meterRegistry.get("stripe.http.active").gauge().value()).isZero();
+    }
+
+    private static StripeSimulation simulation(long seed, double declineRate, double rateLimitRate, double timeoutRate) {
+        return new StripeSimulation(seed, Duration.ofMillis(300), Duration.ofMillis(1_500),
+                declineRate, rateLimitRate, timeoutRate, Duration.ofSeconds(30));
+    }
+
+    //microsecond latencies and a short timeout so the charges do not slow the test down
+    private StripeService service(double declineRate, double rateLimitRate, double timeoutRate) {
+        SimulatedStripeHttpClient simulator = new SimulatedStripeHttpClient(new StripeSimulation(42,
+                Duration.ofNanos(1_000), Duration.ofNanos(2_000), declineRate, rateLimitRate, timeoutRate, Duration.ofMillis(1)));
+        StripeHttpClient client = new StripeHttpClient(meterRegistry, Duration.ofSeconds(1), Duration.ofSeconds(1),
+                2, 0, Duration.ofSeconds(1), simulator);
+        StripeService service = new StripeService(new StripeApi(client, "https://api.stripe.com"), 2, false);
+        clients.add(client);
+        services.add(service);
+        return service;
+    }
+}
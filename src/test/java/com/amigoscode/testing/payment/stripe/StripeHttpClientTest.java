@@ -0,0 +1,186 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.Charge;
+import com.stripe.net.RequestOptions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//runs against a local stub of the stripe charges endpoint
+class StripeHttpClientTest {
+
+    private static final String PAID_CHARGE = "{\"id\":\"ch_1\",\"object\":\"charge\",\"paid\":true}";
+
+    private HttpServer stripeStub;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private volatile CountDownLatch arrived = new CountDownLatch(0);
+
+    private SimpleMeterRegistry meterRegistry;
+    private StripeHttpClient stripeHttpClient;
+
+    private final RequestOptions options = RequestOptions.builder()
+            .setApiKey("sk_test_stub")
+            .build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stripeStub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        stripeStub.createContext("/v1/charges", this::charge);
+        stripeStub.setExecutor(Executors.newCachedThreadPool());
+        stripeStub.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (stripeHttpClient != null) {
+            stripeHttpClient.close();
+        }
+        stripeStub.stop(0);
+    }
+
+    @Test
+    void itShouldChargeOverOneKeptAliveConnection() throws Exception {
+        //given
+        StripeApi underTest = stripeApi(1, 0, Duration.ofSeconds(5));
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            Charge charge = underTest.create(Map.of("amount", 1000L, "currency", "usd"),
+                    options.toBuilder().setIdempotencyKey("key-" + i).build());
+            assertThat(charge.getPaid()).isTrue();
+        }
+
+        //then
+        assertThat(requestBodies).hasSize(3).allSatisfy(body ->
+                assertThat(body).contains("amount=1000").contains("currency=usd"));
+        assertThat(idempotencyKeys).containsExactly("key-0", "key-1", "key-2");
+        assertThat(clientPorts).hasSize(1);
+        assertThat(meterRegistry.get("stripe.http.requests").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void itShouldRejectWhenBulkheadAndQueueAreFull() throws Exception {
+        //given one call held by the provider and no room to queue
+        StripeApi underTest = stripeApi(1, 0, Duration.ofSeconds(5));
+        release = new CountDownLatch(1);
+        arrived = new CountDownLatch(1);
+        CompletableFuture<Charge> held = CompletableFuture.supplyAsync(() -> create(underTest));
+        assertThat(arrived.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.get("stripe.http.saturation").gauge().value()).isEqualTo(1.0);
+
+        //when
+        assertThatThrownBy(() -> underTest.create(Map.of("amount", 1000L), options))
+                .isInstanceOf(StripeBulkheadRejectedException.class)
+                .hasMessageContaining("bulkhead full");
+
+        //then the held call still completes
+        release.countDown();
+        assertThat(held.get(5, TimeUnit.SECONDS).getPaid()).isTrue();
+        assertThat(meterRegistry.get("stripe.http.rejected").counter().count()).isEqualTo(1);
+        assertThat(requestBodies).hasSize(1);
+    }
+
+    @Test
+    void itShouldGiveUpWaitingInQueue() throws Exception {
+        //given one call held by the provider and room for one short wait
+        StripeApi underTest = stripeApi(1, 1, Duration.ofMillis(50));
+        release = new CountDownLatch(1);
+        arrived = new CountDownLatch(1);
+        CompletableFuture<Charge> held = CompletableFuture.supplyAsync(() -> create(underTest));
+        assertThat(arrived.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        assertThatThrownBy(() -> underTest.create(Map.of("amount", 1000L), options))
+                .isInstanceOf(StripeBulkheadRejectedException.class)
+                .hasMessageContaining("No stripe connection free");
+
+        //then
+        release.countDown();
+        assertThat(held.get(5, TimeUnit.SECONDS).getPaid()).isTrue();
+        assertThat(meterRegistry.get("stripe.http.queued").gauge().value()).isZero();
+    }
+
+    @Test
+    void itShouldTimeOutSlowProvider() {
+        //given a provider that does not answer
+        stripeHttpClient = new StripeHttpClient(meterRegistry, Duration.ofSeconds(1), Duration.ofMillis(100),
+                1, 0, Duration.ofSeconds(1), null);
+        StripeApi underTest = new StripeApi(stripeHttpClient, baseUrl());
+        release = new CountDownLatch(1);
+
+        //when
+        assertThatThrownBy(() -> underTest.create(Map.of("amount", 1000L), options))
+                .isInstanceOf(ApiConnectionException.class);
+
+        //then the permit is handed back
+        assertThat(meterRegistry.get("stripe.http.active").gauge().value()).isZero();
+    }
+
+    private StripeApi stripeApi(int maxConcurrentRequests, int maxQueuedRequests, Duration maxQueueWait) {
+        stripeHttpClient = new StripeHttpClient(meterRegistry, Duration.ofSeconds(1), Duration.ofSeconds(5),
+                maxConcurrentRequests, maxQueuedRequests, maxQueueWait, null);
+        return new StripeApi(stripeHttpClient, baseUrl());
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + stripeStub.getAddress().getPort();
+    }
+
+    private Charge create(StripeApi stripeApi) {
+        try {
+            return stripeApi.create(Map.of("amount", 1000L), options);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void charge(HttpExchange exchange) throws IOException {
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        if (idempotencyKey != null) {
+            idempotencyKeys.add(idempotencyKey);
+        }
+        arrived.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        byte[] response = PAID_CHARGE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response);
+        }
+    }
+}
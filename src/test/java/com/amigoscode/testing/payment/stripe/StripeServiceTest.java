@@ -2,6 +2,8 @@ package com.amigoscode.testing.payment.stripe;
 
 import com.amigoscode.testing.payment.CardPaymentCharge;
 import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Money;
+import com.stripe.exception.ApiConnectionException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.net.RequestOptions;
@@ -13,8 +15,11 @@ import org.mockito.MockitoAnnotations;
 
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.BDDMockito.given;
@@ -29,15 +34,14 @@ class StripeServiceTest {
     @BeforeEach
     void setup() {
         MockitoAnnotations.initMocks(this);
-        underTest = new StripeService(stripeApi);
+        underTest = new StripeService(stripeApi, 1, false);
     }
 
     @Test
     void itShouldChargeCard() throws StripeException {
         //given
         String cardSource = "0x0x0x";
-        BigDecimal amount = new BigDecimal("10.00");
-        Currency currency = Currency.USD;
+        Money amount = Money.of(new BigDecimal("10.00"), Currency.USD);
         String description = "Zakat";
 
         Charge charge = new Charge();
@@ -45,7 +49,7 @@ class StripeServiceTest {
         given(stripeApi.create(anyMap(), any())).willReturn(charge);
 
         //when
-        CardPaymentCharge cardPaymentCharge = underTest.chargeCard(cardSource, amount, currency, description);
+        CardPaymentCharge cardPaymentCharge = underTest.chargeCard(cardSource, amount, description);
 
         //then
         ArgumentCaptor<Map<String, Object>> mapArgumentCaptor = ArgumentCaptor.forClass(Map.class);
@@ -56,8 +60,9 @@ class StripeServiceTest {
         Map<String, Object> requestMap = mapArgumentCaptor.getValue();
 
         assertThat(requestMap.keySet()).hasSize(4);
-        assertThat(requestMap.get("amount")).isEqualTo(amount);
-        assertThat(requestMap.get("currency")).isEqualTo(currency);
+        //stripe takes amounts in the smallest currency unit
+        assertThat(requestMap.get("amount")).isEqualTo(1000L);
+        assertThat(requestMap.get("currency")).isEqualTo(Currency.USD);
         assertThat(requestMap.get("description")).isEqualTo(description);
         assertThat(requestMap.get("source")).isEqualTo(cardSource);
 
@@ -67,4 +72,74 @@ class StripeServiceTest {
         assertThat(cardPaymentCharge).isNotNull();
         assertThat(cardPaymentCharge.isCardDebited()).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldChargeCardAsynchronously() throws StripeException {
+        //given
+        Charge charge = new Charge();
+        charge.setPaid(true);
+        given(stripeApi.create(anyMap(), any())).willReturn(charge);
+
+        //when
+        CompletableFuture<CardPaymentCharge> cardPaymentCharge = underTest.chargeCardAsync(
+                "0x0x0x", Money.of(new BigDecimal("10.00"), Currency.USD), "Zakat");
+
+        //then
+        assertThat(cardPaymentCharge.join().isCardDebited()).isTrue();
+        then(stripeApi).should().create(anyMap(), any());
+    }
+
+    @Test
+    void itShouldFailAsynchronousChargeWhenStripeFails() throws StripeException {
+        //given
+        given(stripeApi.create(anyMap(), any())).willThrow(new ApiConnectionException("timed out"));
+
+        //when
+        CompletableFuture<CardPaymentCharge> cardPaymentCharge = underTest.chargeCardAsync(
+                "0x0x0x", Money.of(new BigDecimal("10.00"), Currency.USD), "Zakat");
+
+        //then
+        assertThatThrownBy(cardPaymentCharge::join)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Cannot make stripe charge");
+    }
+
+    @Test
+    void itShouldChargeCardOnVirtualThreadWhenEnabled() throws StripeException {
+        //given
+        StripeService virtualThreadStripeService = new StripeService(stripeApi, 1, true);
+
+        Charge charge = new Charge();
+        charge.setPaid(true);
+        AtomicBoolean chargedOnVirtualThread = new AtomicBoolean();
+        given(stripeApi.create(anyMap(), any())).willAnswer(invocation -> {
+            chargedOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return charge;
+        });
+
+        //when
+        CardPaymentCharge cardPaymentCharge = virtualThreadStripeService.chargeCardAsync(
+                "0x0x0x", Money.of(new BigDecimal("10.00"), Currency.USD), "Zakat").join();
+
+        //then
+        assertThat(cardPaymentCharge.isCardDebited()).isTrue();
+        assertThat(chargedOnVirtualThread).isTrue();
+    }
+
+    @Test
+    void itShouldSendIdempotencyKeyToStripe() throws StripeException {
+        //given
+        Charge charge = new Charge();
+        charge.setPaid(true);
+        given(stripeApi.create(anyMap(), any())).willReturn(charge);
+
+        //when
+        underTest.chargeCardAsync("0x0x0x", Money.of(new BigDecimal("10.00"), Currency.USD), "Zakat", "key-1").join();
+
+        //then
+        ArgumentCaptor<RequestOptions> requestOptionsArgumentCaptor = ArgumentCaptor.forClass(RequestOptions.class);
+        then(stripeApi).should().create(anyMap(), requestOptionsArgumentCaptor.capture());
+        assertThat(requestOptionsArgumentCaptor.getValue().getIdempotencyKey()).isEqualTo("key-1");
+        assertThat(requestOptionsArgumentCaptor.getValue().getApiKey()).isNotNull();
+    }
+}
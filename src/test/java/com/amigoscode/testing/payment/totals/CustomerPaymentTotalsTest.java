@@ -0,0 +1,225 @@
+package com.amigoscode.testing.payment.totals;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//not transactional, concurrent writers each commit payments and totals in a transaction of their own.
+//the extra property gives the test a context and database of its own, so the payment ids it draws
+//do not shift the ids other repository tests expect
+@DataJpaTest(properties = {
+        "spring.jpa.properties.javax.persistence.validation.mode=none",
+        "payment.totals.rebuild-cron=-"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerPaymentTotalsTest {
+
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private CustomerPaymentTotalRepository customerPaymentTotalRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+    private TransactionTemplate transactionTemplate;
+    private CustomerPaymentTotals underTest;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        customerPaymentTotalRepository.deleteAll();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        underTest = new CustomerPaymentTotals(customerPaymentTotalRepository, paymentRepository, jdbcTemplate,
+                transactionManager);
+    }
+
+    @Test
+    void itShouldAddPaymentsToCustomerTotalsPerCurrency() {
+        //given
+        UUID customerId = UUID.randomUUID();
+
+        //when
+        List<Payment> first = write(
+                payment(customerId, "10.00", Currency.USD),
+                payment(customerId, "5.50", Currency.USD),
+                payment(customerId, "7.00", Currency.GBP));
+        List<Payment> second = write(payment(customerId, "1.25", Currency.USD));
+
+        //then
+        List<CustomerPaymentTotal> totals = underTest.selectCustomerPaymentTotals(customerId);
+        assertThat(totals).hasSize(2);
+        CustomerPaymentTotal usd = total(totals, Currency.USD);
+        assertThat(usd.getTotalAmount()).isEqualByComparingTo("16.75");
+        assertThat(usd.getPaymentCount()).isEqualTo(3);
+        assertThat(usd.getLastPaymentId()).isEqualTo(second.get(0).getPaymentId());
+        CustomerPaymentTotal gbp = total(totals, Currency.GBP);
+        assertThat(gbp.getTotalAmount()).isEqualByComparingTo("7.00");
+        assertThat(gbp.getPaymentCount()).isEqualTo(1);
+        assertThat(gbp.getLastPaymentId()).isEqualTo(first.get(2).getPaymentId());
+    }
+
+    @Test
+    void itShouldNotAddPaymentsWhenTheirTransactionRollsBack() {
+        //given
+        UUID customerId = UUID.randomUUID();
+        write(payment(customerId, "10.00", Currency.USD));
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            Payment payment = paymentRepository.save(payment(customerId, "99.00", Currency.USD));
+            underTest.add(List.of(payment));
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertThat(total(underTest.selectCustomerPaymentTotals(customerId), Currency.USD).getTotalAmount())
+                .isEqualByComparingTo("10.00");
+    }
+
+    @Test
+    void itShouldAddConcurrentFirstPaymentsToOneTotal() throws Exception {
+        //given a customer without totals, and more writers than the pool has connections
+        UUID customerId = UUID.randomUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        //when
+        List<Future<List<Payment>>> writes = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            writes.add(executor.submit(() -> write(payment(customerId, "1.00", Currency.USD))));
+        }
+        for (Future<List<Payment>> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //then
+        CustomerPaymentTotal usd = total(underTest.selectCustomerPaymentTotals(customerId), Currency.USD);
+        assertThat(usd.getTotalAmount()).isEqualByComparingTo("32.00");
+        assertThat(usd.getPaymentCount()).isEqualTo(32);
+    }
+
+    @Test
+    void itShouldRebuildTotalsFromPayments() {
+        //given totals that drifted from the payments
+        UUID customerId = UUID.randomUUID();
+        List<Payment> payments = write(payment(customerId, "10.00", Currency.USD));
+        customerPaymentTotalRepository.deleteAll();
+        paymentRepository.save(payment(customerId, "2.00", Currency.USD));
+        UUID otherCustomerId = UUID.randomUUID();
+        write(payment(otherCustomerId, "3.00", Currency.GBP));
+        customerPaymentTotalRepository.save(new CustomerPaymentTotal(otherCustomerId, Currency.USD, 500L, 1L, null));
+
+        //when
+        underTest.rebuild();
+
+        //then
+        CustomerPaymentTotal usd = total(underTest.selectCustomerPaymentTotals(customerId), Currency.USD);
+        assertThat(usd.getTotalAmount()).isEqualByComparingTo("12.00");
+        assertThat(usd.getPaymentCount()).isEqualTo(2);
+        assertThat(usd.getLastPaymentId()).isGreaterThan(payments.get(0).getPaymentId());
+        assertThat(underTest.selectCustomerPaymentTotals(otherCustomerId))
+                .extracting(total -> total.getId().getCurrency())
+                .containsExactly(Currency.GBP);
+    }
+
+    @Test
+    void itShouldRebuildTotalsInChunks() {
+        //given more customers than one chunk holds
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 750; i++) {
+            payments.add(payment(UUID.randomUUID(), "1.00", Currency.USD));
+        }
+        write(payments.toArray(new Payment[0]));
+        customerPaymentTotalRepository.deleteAll();
+
+        //when
+        underTest.rebuild();
+
+        //then
+        assertThat(customerPaymentTotalRepository.count()).isEqualTo(750);
+    }
+
+    @Test
+    void itShouldRebuildTotalAfterPaymentBeingWrittenCommits() throws Exception {
+        //given a payment whose transaction has added to the total but not committed yet
+        UUID customerId = UUID.randomUUID();
+        write(payment(customerId, "10.00", Currency.USD));
+        CountDownLatch added = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> writer = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+            Payment payment = paymentRepository.save(payment(customerId, "5.00", Currency.USD));
+            underTest.add(List.of(payment));
+            added.countDown();
+            await(commit);
+        }));
+        added.await();
+
+        //when the rebuild waits on the total until that payment commits
+        AtomicReference<Thread> rebuildThread = new AtomicReference<>();
+        Future<?> rebuild = executor.submit(() -> {
+            rebuildThread.set(Thread.currentThread());
+            underTest.rebuild();
+        });
+        while (rebuildThread.get() == null || rebuildThread.get().getState() != Thread.State.TIMED_WAITING) {
+            Thread.onSpinWait();
+        }
+        commit.countDown();
+        writer.get(30, TimeUnit.SECONDS);
+        rebuild.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //then the payment is counted once
+        CustomerPaymentTotal usd = total(underTest.selectCustomerPaymentTotals(customerId), Currency.USD);
+        assertThat(usd.getTotalAmount()).isEqualByComparingTo("15.00");
+        assertThat(usd.getPaymentCount()).isEqualTo(2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Payment> write(Payment... payments) {
+        return transactionTemplate.execute(status -> {
+            List<Payment> saved = List.of(payments);
+            paymentRepository.saveAll(saved);
+            underTest.add(saved);
+            return saved;
+        });
+    }
+
+    private static CustomerPaymentTotal total(List<CustomerPaymentTotal> totals, Currency currency) {
+        return totals.stream()
+                .filter(total -> total.getId().getCurrency() == currency)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static Payment payment(UUID customerId, String amount, Currency currency) {
+        return new Payment(null, customerId, new BigDecimal(amount), currency, "card123xx", "donation");
+    }
+}
@@ -1,11 +0,0 @@
-package com.amigoscode.testing.util;
-
-import java.util.function.Predicate;
-
-public class PhoneNumberValidator implements Predicate<String> {
-
-    @Override
-    public boolean test(String phoneNumber) {
-        return phoneNumber.startsWith("+44");
-    }
-}
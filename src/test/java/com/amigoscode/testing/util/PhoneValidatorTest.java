@@ -2,8 +2,14 @@ package com.amigoscode.testing.util;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PhoneValidatorTest {
 
@@ -25,4 +31,64 @@ public class PhoneValidatorTest {
         //then
         assertThat(isValid).isTrue();
     }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "+12025550123",
+            "+33612345678",
+            "+4915123456789",
+            "+353861234567",
+            "+919876543210",
+            "00447000000000",
+            "+44 7000 000000",
+            "+44 (0) 7000-000.000"
+    })
+    void itShouldValidatePhoneNumbersOfSupportedRegions(String phoneNumber) {
+        assertThat(underTest.test(phoneNumber)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "447000000000",
+            "07000000000",
+            "+4470000000",
+            "+4470000000000",
+            "+44700000000a",
+            "+999123456789",
+            "+4915123456789012"
+    })
+    void itShouldNotValidatePhoneNumber(String phoneNumber) {
+        assertThat(underTest.test(phoneNumber)).isFalse();
+    }
+
+    @Test
+    void itShouldNotValidateNullPhoneNumber() {
+        assertThat(underTest.test(null)).isFalse();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "+447000000000, +447000000000",
+            "0044 7000 000 000, +447000000000",
+            "+1 (202) 555-0123, +12025550123",
+            "+33.6.12.34.56.78, +33612345678",
+            "+44 (0) 7000 000000, +447000000000",
+            "0044(0)7000000000, +447000000000"
+    })
+    void itShouldNormalizePhoneNumberToE164(String phoneNumber, String expected) {
+        assertThat(underTest.normalize(phoneNumber)).contains(expected);
+    }
+
+    @Test
+    void itShouldNotNormalizeInvalidPhoneNumber() {
+        assertThat(underTest.normalize("+4470000")).isNotPresent();
+    }
+
+    @Test
+    void itShouldRejectRulesWhereOneCountryCodeIsAPrefixOfAnother() {
+        assertThatThrownBy(() -> new PhoneNumberValidator(Map.of("3", "9", "35", "9")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("35");
+    }
 }
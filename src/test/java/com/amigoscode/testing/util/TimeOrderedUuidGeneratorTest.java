@@ -0,0 +1,129 @@
+package com.amigoscode.testing.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidGeneratorTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-11-14T22:13:20Z"));
+    private final TimeOrderedUuidGenerator underTest = new TimeOrderedUuidGenerator(clock);
+
+    @Test
+    void itShouldMakeVersion7UuidsCarryingTheTime() {
+        //when
+        UUID id = underTest.next();
+
+        //then
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(timestampOf(id)).isEqualTo(clock.millis());
+        assertThat(UUID.fromString(id.toString())).isEqualTo(id);
+    }
+
+    @Test
+    void itShouldKeepIncreasingWithinAMillisecondAndWhenTheClockStepsBack() {
+        //given
+        List<UUID> ids = new ArrayList<>();
+        ids.add(underTest.next());
+        ids.add(underTest.next());
+        clock.advance(Duration.ofSeconds(-5));
+        ids.add(underTest.next());
+        clock.advance(Duration.ofSeconds(10));
+        ids.add(underTest.next());
+
+        //then
+        for (int i = 1; i < ids.size(); i++) {
+            assertThat(Long.compareUnsigned(
+                    ids.get(i).getMostSignificantBits(), ids.get(i - 1).getMostSignificantBits())).isPositive();
+        }
+        assertThat(timestampOf(ids.get(3))).isEqualTo(clock.millis());
+    }
+
+    @Test
+    void itShouldCarryIntoTheTimestampWhenTheCounterRunsOut() {
+        //given a millisecond's worth of counter
+        long start = clock.millis();
+        UUID last = null;
+        for (int i = 0; i < 4096; i++) {
+            last = underTest.next();
+        }
+        assertThat(timestampOf(last)).isEqualTo(start);
+
+        //when
+        UUID next = underTest.next();
+
+        //then
+        assertThat(timestampOf(next)).isEqualTo(start + 1);
+        assertThat(Long.compareUnsigned(next.getMostSignificantBits(), last.getMostSignificantBits())).isPositive();
+    }
+
+    @Test
+    void itShouldNotHandOutTheSameIdTwiceAcrossThreads() {
+        //given
+        TimeOrderedUuidGenerator generator = new TimeOrderedUuidGenerator();
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> threads = new ArrayList<>();
+
+        //when
+        for (int t = 0; t < 4; t++) {
+            threads.add(CompletableFuture.runAsync(() -> {
+                long previous = 0;
+                for (int i = 0; i < 20_000; i++) {
+                    UUID id = generator.next();
+                    ids.add(id);
+                    //each thread sees its own ids in order
+                    assertThat(Long.compareUnsigned(id.getMostSignificantBits(), previous)).isPositive();
+                    previous = id.getMostSignificantBits();
+                }
+            }));
+        }
+        threads.forEach(CompletableFuture::join);
+
+        //then
+        assertThat(ids).hasSize(80_000);
+    }
+
+    private static long timestampOf(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}